@@ -16,4 +16,10 @@
 
 set JLINK_VM_OPTIONS=
 set DIR=%~dp0
-"%DIR%\..\native-windows\bin\java" %JLINK_VM_OPTIONS% -m com.haulmont.cuba.cli/com.haulmont.cuba.cli.EntryPointKt %*
+@REM class data sharing archive is generated by the bundle task for the build platform only
+set CDS_ARCHIVE=%DIR%\..\native-windows\lib\cuba-cli.jsa
+if exist "%CDS_ARCHIVE%" set JLINK_VM_OPTIONS=%JLINK_VM_OPTIONS% -XX:SharedArchiveFile="%CDS_ARCHIVE%" -Xshare:auto
+@REM CUBA_CLI_DAEMON=true forwards single commands to the resident daemon, that is started on the first call
+set MAIN_CLASS=com.haulmont.cuba.cli.EntryPointKt
+if "%CUBA_CLI_DAEMON%"=="true" set MAIN_CLASS=com.haulmont.cuba.cli.daemon.DaemonClientKt
+"%DIR%\..\native-windows\bin\java" %JLINK_VM_OPTIONS% -m com.haulmont.cuba.cli/%MAIN_CLASS% %*
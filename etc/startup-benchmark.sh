@@ -0,0 +1,64 @@
+#!/bin/bash
+
+# Copyright (c) 2008-2018 Haulmont.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Measures wall time of `cuba-cli version` and `cuba-cli help` of the bundle with and without the CDS archive.
+# Usage: startup-benchmark.sh [bundle directory, build/bundle by default] [runs count, 10 by default]
+
+BUNDLE_DIR=${1:-build/bundle}
+RUNS=${2:-10}
+
+NATIVE_DIR=$(ls -d "$BUNDLE_DIR"/native-* 2>/dev/null | head -n 1)
+if [[ -z "$NATIVE_DIR" ]]; then
+   echo "Bundle is not found in $BUNDLE_DIR, build it with ./gradlew bundle"
+   exit 1
+fi
+
+JAVA="$NATIVE_DIR/bin/java"
+CDS_ARCHIVE="$NATIVE_DIR/lib/cuba-cli.jsa"
+MAIN='com.haulmont.cuba.cli/com.haulmont.cuba.cli.EntryPointKt'
+
+now_millis () {
+  perl -MTime::HiRes=time -e 'printf "%.0f\n", time * 1000'
+}
+
+# prints average, min and max wall time in milliseconds of running the cli with the given jvm options and command
+measure () {
+  local options=$1
+  shift
+  local total=0 min=0 max=0
+  for ((i = 0; i < RUNS; i++)); do
+    local start=$(now_millis)
+    "$JAVA" $options -m $MAIN "$@" > /dev/null 2>&1 < /dev/null
+    local elapsed=$(( $(now_millis) - start ))
+    total=$(( total + elapsed ))
+    if (( i == 0 || elapsed < min )); then min=$elapsed; fi
+    if (( elapsed > max )); then max=$elapsed; fi
+  done
+  printf "%8d %8d %8d" $(( total / RUNS )) $min $max
+}
+
+printf "%-10s %-12s %8s %8s %8s\n" "command" "archive" "avg, ms" "min, ms" "max, ms"
+for command in version help; do
+  # warm up file system caches
+  "$JAVA" -m $MAIN $command > /dev/null 2>&1 < /dev/null
+
+  printf "%-10s %-12s %s\n" $command "none" "$(measure "-Xshare:auto" $command)"
+  if [[ -f "$CDS_ARCHIVE" ]]; then
+    printf "%-10s %-12s %s\n" $command "cuba-cli.jsa" "$(measure "-XX:SharedArchiveFile=$CDS_ARCHIVE -Xshare:auto" $command)"
+  else
+    printf "%-10s %-12s %s\n" $command "cuba-cli.jsa" "not found, build bundle with -PbundleCds=true"
+  fi
+done
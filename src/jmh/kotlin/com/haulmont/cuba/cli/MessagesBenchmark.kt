@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli
+
+import com.haulmont.cuba.cli.cubaplugin.CubaPlugin
+import com.haulmont.cuba.cli.cubaplugin.project.ProjectInitCommand
+import org.openjdk.jmh.annotations.*
+import java.util.Properties
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reads messages, that are read during startup and project initialization, with a new bundle per access,
+ * as it was before bundles were shared, and through shared bundles.
+ * Only time per operation is measured. That a bundle is read once per JVM is checked by `MessagesTest`.
+ * Run with `gradlew jmh -PjmhInclude=MessagesBenchmark`.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class MessagesBenchmark {
+
+    private val startupMessages: List<Pair<Class<*>, String>> = listOf(
+            ShellCli::class.java to "welcomeMessage",
+            ShellCli::class.java to "interactiveModeHint",
+            CubaPlugin::class.java to "projectParsingError",
+            ProjectInitCommand::class.java to "databases",
+            ProjectInitCommand::class.java to "databaseAliases",
+            ProjectInitCommand::class.java to "databases",
+            ProjectInitCommand::class.java to "databaseAliases"
+    )
+
+    @Benchmark
+    fun bundlePerAccess(): Int = startupMessages.sumBy { (clazz, key) ->
+        val properties = clazz.getResource("messages.properties").openStream().reader().use { reader ->
+            Properties().apply { load(reader) }
+        }
+        properties.getProperty(key).length
+    }
+
+    @Benchmark
+    fun sharedBundles(): Int = startupMessages.sumBy { (clazz, key) -> Messages(clazz)[key].length }
+}
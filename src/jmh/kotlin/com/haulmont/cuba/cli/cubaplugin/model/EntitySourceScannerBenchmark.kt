@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares [EntitySourceScanner] with reading the whole entity source and matching it with regex,
+ * as entity sources were parsed before. Run with `gradlew jmh -PjmhInclude=EntitySourceScannerBenchmark`
+ * and `-prof gc` to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class EntitySourceScannerBenchmark {
+
+    @Param("10", "1000", "10000")
+    var attributesCount: Int = 0
+
+    private lateinit var directory: Path
+
+    private lateinit var source: Path
+
+    @Setup
+    fun setUp() {
+        directory = Files.createTempDirectory("entity-scanner-benchmark")
+        source = directory.resolve("Customer.java")
+        Files.write(source, generateEntitySource(attributesCount).toByteArray())
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Benchmark
+    fun scanner(): Entity = Entity("com.company.sample.entity.Customer", EntitySourceScanner.scan(source))
+
+    @Benchmark
+    fun regex(): Entity {
+        val code = String(Files.readAllBytes(source))
+        val name = ENTITY_NAME_REGEX.find(code)?.groupValues?.get(2) ?: "Customer"
+        return Entity("com.company.sample.entity.Customer", name, code.contains("@Embeddable"))
+    }
+
+    private fun generateEntitySource(attributesCount: Int): String = buildString {
+        append("""
+            |package com.company.sample.entity;
+            |
+            |import javax.persistence.*;
+            |import com.haulmont.cuba.core.entity.StandardEntity;
+            |
+            |/**
+            | * Sample customer.
+            | */
+            |@Table(name = "SAMPLE_CUSTOMER")
+            |@Entity(name = "sample${'$'}Customer")
+            |public class Customer extends StandardEntity {
+            |""".trimMargin())
+
+        for (i in 0 until attributesCount) {
+            append("""
+                |
+                |    @Column(name = "ATTRIBUTE_$i")
+                |    protected String attribute$i;
+                |
+                |    public String getAttribute$i() {
+                |        return attribute$i;
+                |    }
+                |
+                |    public void setAttribute$i(String attribute$i) {
+                |        this.attribute$i = attribute$i;
+                |    }
+                |""".trimMargin())
+        }
+
+        append("}\n")
+    }
+
+    companion object {
+        private val ENTITY_NAME_REGEX = Regex("@Entity\\((name *=)? *\"([^\n]*)\".*\\)")
+    }
+}
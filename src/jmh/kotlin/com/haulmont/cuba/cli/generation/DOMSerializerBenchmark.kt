@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.openjdk.jmh.annotations.*
+import org.w3c.dom.Document
+import java.io.Writer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Throughput of serialization of large persistence.xml and web-screens.xml descriptors.
+ * Run with `gradlew jmh -PjmhInclude=DOMSerializerBenchmark` and `-prof gc` to see allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class DOMSerializerBenchmark {
+
+    @Param("1000", "10000")
+    var elementsCount: Int = 0
+
+    private lateinit var persistenceXml: Document
+
+    private lateinit var screensXml: Document
+
+    private val nullWriter = object : Writer() {
+        override fun write(cbuf: CharArray, off: Int, len: Int) {}
+
+        override fun write(str: String, off: Int, len: Int) {}
+
+        override fun write(c: Int) {}
+
+        override fun flush() {}
+
+        override fun close() {}
+    }
+
+    @Setup
+    fun setUp() {
+        persistenceXml = parse(buildString {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+            append("<persistence xmlns=\"http://java.sun.com/xml/ns/persistence\" version=\"2.0\">\n")
+            append("    <persistence-unit name=\"sample\" transaction-type=\"RESOURCE_LOCAL\">\n")
+            for (i in 0 until elementsCount) {
+                append("        <class>com.company.sample.entity.Entity$i</class>\n")
+            }
+            append("    </persistence-unit>\n")
+            append("</persistence>\n")
+        })
+
+        screensXml = parse(buildString {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+            append("<screen-config xmlns=\"http://schemas.haulmont.com/cuba/screens.xsd\"\n")
+            append("               xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n")
+            for (i in 0 until elementsCount) {
+                append("    <screen id=\"sample\$Entity$i.edit\" template=\"com/company/sample/web/entity$i/entity$i-edit.xml\"/>\n")
+            }
+            append("</screen-config>\n")
+        })
+    }
+
+    @Benchmark
+    fun persistenceXml() {
+        DOMSerializer(numIndentSpaces = 4).serialize(persistenceXml, nullWriter)
+    }
+
+    @Benchmark
+    fun screensXml() {
+        DOMSerializer(numIndentSpaces = 4).serialize(screensXml, nullWriter)
+    }
+}
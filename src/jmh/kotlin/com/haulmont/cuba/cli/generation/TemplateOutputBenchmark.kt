@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.apache.velocity.VelocityContext
+import org.apache.velocity.app.Velocity
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares rendering of a large template into a string, that is written to file afterwards,
+ * with merging the template directly into the file writer.
+ * Run with `gradlew jmh -PjmhInclude=TemplateOutputBenchmark` and `-prof gc` to see allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class TemplateOutputBenchmark {
+
+    @Param("1000", "100000")
+    var linesCount: Int = 0
+
+    private lateinit var directory: Path
+
+    private lateinit var template: Path
+
+    private lateinit var output: Path
+
+    private val velocityHelper = VelocityHelper()
+
+    private lateinit var vc: VelocityContext
+
+    @Setup
+    fun setUp() {
+        Velocity.init()
+
+        directory = Files.createTempDirectory("template-output-benchmark")
+        template = directory.resolve("data.sql.vm")
+        output = directory.resolve("data.sql")
+
+        Files.write(template, """
+            |#foreach( ${'$'}i in [1..${'$'}linesCount] )
+            |insert into SAMPLE_CUSTOMER (ID, NAME, EMAIL) values (${'$'}i, '${'$'}{name} ${'$'}i', 'customer${'$'}i@${'$'}{domain}');
+            |#end
+            |""".trimMargin().toByteArray())
+
+        vc = VelocityContext().apply {
+            put("linesCount", linesCount)
+            put("name", "Customer")
+            put("domain", "example.com")
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Benchmark
+    fun renderToString() {
+        val text = velocityHelper.generate(template, vc)
+
+        Files.newBufferedWriter(output).use { writer ->
+            writer.write(text)
+        }
+    }
+
+    @Benchmark
+    fun renderToFile() {
+        velocityHelper.generate(template, output, vc)
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares appending of an entity class to a large persistence.xml through DOM with streaming insertion.
+ * Run with `gradlew jmh -PjmhInclude=XmlAppendBenchmark` and `-prof gc` to see allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class XmlAppendBenchmark {
+
+    @Param("1000", "10000")
+    var classesCount: Int = 0
+
+    private lateinit var directory: Path
+
+    private lateinit var persistenceXml: Path
+
+    private val append = XmlAppend(listOf("persistence-unit"), "class") {
+        textContent = "com.company.sample.entity.NewEntity"
+    }
+
+    @Setup
+    fun setUp() {
+        directory = Files.createTempDirectory("xml-append-benchmark")
+        persistenceXml = directory.resolve("persistence.xml")
+
+        Files.write(persistenceXml, buildString {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+            append("<persistence xmlns=\"http://java.sun.com/xml/ns/persistence\" version=\"2.0\">\n")
+            append("    <persistence-unit name=\"sample\" transaction-type=\"RESOURCE_LOCAL\">\n")
+            for (i in 0 until classesCount) {
+                append("        <class>com.company.sample.entity.Entity$i</class>\n")
+            }
+            append("    </persistence-unit>\n")
+            append("</persistence>\n")
+        }.toByteArray())
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Benchmark
+    fun dom(): Long {
+        val document = parse(persistenceXml)
+        append.applyTo(document.documentElement)
+
+        val result = directory.resolve("dom.xml")
+        DOMSerializer(numIndentSpaces = 4).serialize(document, result.toFile())
+        return Files.size(result)
+    }
+
+    @Benchmark
+    fun streaming(): Long {
+        val result = StreamingXmlEditor().apply(persistenceXml, listOf(append))!!
+        return Files.size(result).also {
+            Files.delete(result)
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import net.sf.practicalxml.xpath.XPathWrapper
+import org.openjdk.jmh.annotations.*
+import org.xml.sax.InputSource
+import java.io.StringReader
+import java.util.concurrent.TimeUnit
+import javax.xml.parsers.DocumentBuilderFactory
+
+/**
+ * Compares parsing and querying of typical CUBA descriptors with a new parser and xpath per call
+ * against pooled parsers and cached xpath expressions.
+ * Run with `gradlew jmh -PjmhInclude=XmlParsingBenchmark`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class XmlParsingBenchmark {
+
+    private val screensXml = buildString {
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+        append("<screen-config xmlns=\"http://schemas.haulmont.com/cuba/screens.xsd\">\n")
+        for (i in 0 until 50) {
+            append("    <screen id=\"sample\$Entity$i.browse\" template=\"com/company/sample/web/entity$i/entity$i-browse.xml\"/>\n")
+            append("    <screen id=\"sample\$Entity$i.edit\" template=\"com/company/sample/web/entity$i/entity$i-edit.xml\"/>\n")
+        }
+        append("</screen-config>\n")
+    }
+
+    private val webXml = """
+        <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+        <web-app xmlns="http://java.sun.com/xml/ns/javaee" version="3.0">
+            <context-param>
+                <param-name>appPropertiesConfig</param-name>
+                <param-value>classpath:com/company/sample/web-app.properties</param-value>
+            </context-param>
+            <context-param>
+                <param-name>appComponents</param-name>
+                <param-value>com.haulmont.cuba com.haulmont.reports</param-value>
+            </context-param>
+            <listener>
+                <listener-class>com.haulmont.cuba.web.sys.WebAppContextLoader</listener-class>
+            </listener>
+        </web-app>
+    """.trimIndent()
+
+    private val screenIdExpression = "//screen[@id=\"sample\$Entity25.edit\"]"
+
+    private val appComponentsExpression = "//context-param[param-name[text()='appComponents']]/param-value"
+
+    @Benchmark
+    fun newParserAndXPath(): Int {
+        val screens = newParser(screensXml).documentElement
+        val web = newParser(webXml).documentElement
+
+        return XPathWrapper(screenIdExpression).evaluate(screens).size +
+                XPathWrapper(appComponentsExpression).evaluate(web).size
+    }
+
+    @Benchmark
+    fun pooledParserAndCachedXPath(): Int {
+        val screens = parse(screensXml).documentElement
+        val web = parse(webXml).documentElement
+
+        return screens.xpath(screenIdExpression).size + web.xpath(appComponentsExpression).size
+    }
+
+    @Benchmark
+    @Threads(4)
+    fun pooledParserAndCachedXPathConcurrently(): Int = pooledParserAndCachedXPath()
+
+    private fun newParser(xml: String) = DocumentBuilderFactory.newInstance().apply {
+        isNamespaceAware = false
+        isCoalescing = true
+        isValidating = false
+    }.newDocumentBuilder().parse(InputSource(StringReader(xml)))
+}
@@ -98,6 +98,9 @@ module com.haulmont.cuba.cli {
 //    requires by sdk plugin
     requires java.desktop;
     requires java.management;
+
+//    thread allocation counters of startup profiler
+    requires jdk.management;
     requires java.naming;
 
 //    jansi support workaround
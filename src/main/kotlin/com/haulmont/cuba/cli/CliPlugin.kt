@@ -39,6 +39,8 @@ package com.haulmont.cuba.cli
  * * [com.haulmont.cuba.cli.event.ErrorEvent]
  *
  * After CLI is launched it fires [InitPluginEvent], and all subscribed plugins may register their commands.
+ * Plugins from the plugins directory, that only register commands, may be loaded when one of their commands
+ * is used for the first time. Plugins, that subscribe any other event, are loaded on start.
  * Before CLI is closed it fires [DestroyEvent].
  *
  * We use [Kodein-DI](http://kodein.org/Kodein-DI/) as a dependency injection container.
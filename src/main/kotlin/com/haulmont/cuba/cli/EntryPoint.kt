@@ -22,10 +22,14 @@ import com.haulmont.cuba.cli.commands.CommandsRegistry
 import com.haulmont.cuba.cli.commands.LaunchOptions
 import com.haulmont.cuba.cli.cubaplugin.NamesUtils
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersionsManager
+import com.haulmont.cuba.cli.daemon.CliDaemon
+import com.haulmont.cuba.cli.daemon.stopDaemon
 import com.haulmont.cuba.cli.di.terminalModule
 import com.haulmont.cuba.cli.event.DestroyPluginEvent
 import com.haulmont.cuba.cli.event.ErrorEvent
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersionsManagerImpl
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectFileIndexManager
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectModelCache
 import org.kodein.di.Kodein
 import org.kodein.di.direct
 import org.kodein.di.generic.bind
@@ -86,32 +90,76 @@ val kodein = Kodein {
     bind<WorkingDirectoryManager>() with singleton { WorkingDirectoryManager() }
 
     bind<PlatformVersionsManager>() with singleton { PlatformVersionsManagerImpl() }
+
+    bind<ProjectModelCache>() with singleton { ProjectModelCache() }
+
+    bind<ProjectFileIndexManager>() with singleton { ProjectFileIndexManager() }
 }
 
 private val writer: PrintWriter by kodein.instance()
 
-fun main(args: Array<String>) {
+fun main(launchArgs: Array<String>) {
+
+    val args = StartupProfiler.configure(launchArgs)
+
+    when (args.toList()) {
+        listOf("daemon") -> {
+            runDaemon()
+            System.exit(0)
+        }
+        listOf("daemon", "stop") -> {
+            stopDaemon()
+            return
+        }
+    }
 
     val mode = getCliMode(args)
 
     if (mode == CliMode.SHELL) {
         parseLaunchOptions(args)
-        setupLogger()
+        StartupProfiler.phase("logger") { setupLogger() }
     }
 
-    val versionManager = kodein.direct.instance<PlatformVersionsManager>()
-    versionManager.load()
+    val versionManager = StartupProfiler.phase("kodein") {
+        kodein.direct.instance<PlatformVersionsManager>()
+    }
+    StartupProfiler.phase("versions") { versionManager.load() }
 
     val commandsRegistry = CommandsRegistry()
 
-    PluginLoader().loadPlugins(commandsRegistry, mode)
+    StartupProfiler.phase("plugins") { PluginLoader().loadPlugins(commandsRegistry, mode) }
+
+    val cli: Cli = StartupProfiler.phase("cli") {
+        when (mode) {
+            CliMode.SHELL -> ShellCli(commandsRegistry)
+            CliMode.SINGLE_COMMAND -> SingleCommandCli(args, commandsRegistry)
+        }
+    }
 
-    val cli: Cli = when (mode) {
-        CliMode.SHELL -> ShellCli(commandsRegistry)
-        CliMode.SINGLE_COMMAND -> SingleCommandCli(args, commandsRegistry)
+    if (mode == CliMode.SINGLE_COMMAND) {
+        StartupProfiler.phase("command") { cli.run() }
+    } else {
+        cli.run()
     }
 
-    cli.run()
+    StartupProfiler.finish(mode)
+
+    bus.post(DestroyPluginEvent())
+}
+
+/**
+ * Starts resident process, that executes commands from the daemon client in single command mode.
+ */
+private fun runDaemon() {
+    CliDaemon.isActive = true
+
+    kodein.direct.instance<PlatformVersionsManager>().load()
+
+    val commandsRegistry = CommandsRegistry()
+
+    PluginLoader().loadPlugins(commandsRegistry, CliMode.SINGLE_COMMAND)
+
+    CliDaemon(SingleCommandCli(arrayOf(), commandsRegistry)).run()
 
     bus.post(DestroyPluginEvent())
 }
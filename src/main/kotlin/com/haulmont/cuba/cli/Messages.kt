@@ -17,27 +17,26 @@
 package com.haulmont.cuba.cli
 
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.properties.ReadOnlyProperty
 import kotlin.reflect.KProperty
 
 /**
  * Class to read .properties files.
+ *
+ * Files are loaded once per JVM and shared by all instances, so instances are cheap to create.
  */
-class Messages(clazz: Class<*>, messagesFileName: String = "messages.properties") {
+class Messages(private val clazz: Class<*>, messagesFileName: String = "messages.properties") {
+
+    private val fileName: String = messagesFileName.run {
+        if (!endsWith(".properties")) {
+            this + ".properties"
+        } else this
+    }
 
     private val properties: Properties by lazy {
-        messagesFileName.run {
-            if (!endsWith(".properties")) {
-                this + ".properties"
-            } else this
-        }.let {
-            clazz.getResource(it)?.openStream()?.reader()
-                    ?: throw RuntimeException("Unable to find messages file $messagesFileName for $clazz")
-        }.use { reader ->
-            Properties().apply {
-                load(reader)
-            }
-        }
+        getBundle(clazz, fileName)
     }
 
     fun getMessage(name: String) = properties.getProperty(name) ?: ""
@@ -47,8 +46,47 @@ class Messages(clazz: Class<*>, messagesFileName: String = "messages.properties"
     operator fun get(name: String): String = getMessage(name)
 
     operator fun get(name: String, vararg args: Any): String = getMessage(name, *args)
+
+    private data class BundleKey(val module: Module, val resourceName: String)
+
+    companion object {
+        private val bundles: MutableMap<BundleKey, Properties> = ConcurrentHashMap()
+
+        private val loadedBundles = AtomicInteger()
+
+        /**
+         * Number of messages files read since the JVM start.
+         */
+        internal val loadedBundlesCount: Int
+            get() = loadedBundles.get()
+
+        /**
+         * Classes of the same package share the bundle, as they resolve the same resource in the same module.
+         */
+        private fun getBundle(clazz: Class<*>, fileName: String): Properties {
+            val resourceName = if (fileName.startsWith("/")) fileName else {
+                "/" + clazz.packageName.replace('.', '/') + "/" + fileName
+            }
+
+            return bundles.computeIfAbsent(BundleKey(clazz.module, resourceName)) {
+                loadedBundles.incrementAndGet()
+
+                clazz.getResource(fileName)?.openStream()?.reader()
+                        ?.use { reader ->
+                            Properties().apply {
+                                load(reader)
+                            }
+                        }
+                        ?: throw RuntimeException("Unable to find messages file $fileName for $clazz")
+            }
+        }
+    }
 }
 
 fun localMessages(): ReadOnlyProperty<Any, Messages> = object : ReadOnlyProperty<Any, Messages> {
-    override fun getValue(thisRef: Any, property: KProperty<*>) = Messages(thisRef.javaClass)
-}
\ No newline at end of file
+    private var messages: Messages? = null
+
+    override fun getValue(thisRef: Any, property: KProperty<*>) = messages ?: Messages(thisRef.javaClass).also {
+        messages = it
+    }
+}
@@ -14,9 +14,12 @@
  * limitations under the License.
  */
 
+
 package com.haulmont.cuba.cli
 
 import com.google.common.eventbus.EventBus
+import com.google.common.eventbus.Subscribe
+import com.google.common.reflect.TypeToken
 import com.haulmont.cuba.cli.commands.CommandsRegistry
 import com.haulmont.cuba.cli.cubaplugin.CubaPlugin
 import com.haulmont.cuba.cli.event.InitPluginEvent
@@ -30,7 +33,15 @@ import java.util.*
 import java.util.logging.Level
 import java.util.logging.Logger
 
-internal class PluginLoader {
+/**
+ * Loads built-in plugins and plugins from `~/.haulmont/cli/plugins` and its subdirectories.
+ *
+ * Plugins of a directory are resolved in a separate module layer. Once the layer is resolved, commands of
+ * every plugin are recorded in [PluginManifestCache]. On the next start, while the directory jars are the same,
+ * recorded commands are registered as deferred, and the layer is resolved only when one of them is used.
+ * Plugins without commands and plugins, that subscribe events other than [InitPluginEvent], are always loaded on start.
+ */
+internal class PluginLoader(private val manifestCache: PluginManifestCache = PluginManifestCache()) {
 
     private val log: Logger = Logger.getLogger(PluginLoader::class.java.name)
 
@@ -41,29 +52,75 @@ internal class PluginLoader {
     private val bus: EventBus by kodein.instance()
 
     internal fun loadPlugins(commandsRegistry: CommandsRegistry, mode: CliMode) {
-        log.log(Level.INFO, "Creating plugins module layer")
+        log.log(Level.INFO, "Loading built-in plugins")
+
+        loadPlugins(ModuleLayer.boot()).filter { acceptPlugin(it, mode) }.forEach {
+            bus.register(it)
+        }
+
+        log.log(Level.INFO, "InitPluginEvent")
+        bus.post(InitPluginEvent(commandsRegistry, mode))
 
         val pluginsDir = Paths.get(System.getProperty("user.home"), ".haulmont", "cli", "plugins")
 
-        loadPluginsByDir(pluginsDir, mode)
+        if (Files.exists(pluginsDir)) {
+            loadPluginsByDir(pluginsDir, commandsRegistry, mode)
 
-        if(Files.exists(pluginsDir)) {
             Files.walk(pluginsDir, 1)
                     .filter { it != pluginsDir }
                     .filter { Files.isDirectory(it) }
-                    .forEach { loadPluginsByDir(it, mode) }
+                    .forEach { loadPluginsByDir(it, commandsRegistry, mode) }
+
+            manifestCache.save()
         }
+    }
 
-        log.log(Level.INFO, "InitPluginEvent")
-        bus.post(InitPluginEvent(commandsRegistry, mode))
+    private fun loadPluginsByDir(pluginsDir: Path, commandsRegistry: CommandsRegistry, mode: CliMode) {
+        val jars = try {
+            PluginManifestCache.jarsOf(pluginsDir)
+        } catch (e: Exception) {
+            log.log(Level.WARNING, "Error during listing plugins directory $pluginsDir", e)
+            emptyList<JarFingerprint>()
+        }
+
+        val plugins = manifestCache.get(pluginsDir, jars)?.flatMap { it.plugins }
+
+        if (jars.isNotEmpty() && plugins != null && plugins.all { it.apiVersion == API_VERSION && it.commands.isNotEmpty() && !it.eventSubscriber }) {
+            if (plugins.isNotEmpty()) {
+                log.log(Level.INFO, "Deferring plugins from directory $pluginsDir")
+                commandsRegistry.deferred(plugins.flatMap { it.commands }) { quiet ->
+                    activatePlugins(pluginsDir, jars, commandsRegistry, mode, quiet)
+                }
+            }
+            return
+        }
+
+        val manifests = activatePlugins(pluginsDir, jars, commandsRegistry, mode)
+        if (manifests != null && jars.isNotEmpty()) {
+            manifestCache.put(pluginsDir, manifests)
+        }
     }
 
-    private fun loadPluginsByDir(pluginsDir: Path, mode: CliMode) {
+    /**
+     * Resolves module layer of [pluginsDir] and initializes its plugins.
+     * If [quiet] is true, loaded plugins aren't reported, e.g. when they are activated by command completion.
+     *
+     * @return manifests of [jars], or null, if the layer can't be resolved
+     */
+    private fun activatePlugins(
+            pluginsDir: Path,
+            jars: List<JarFingerprint>,
+            commandsRegistry: CommandsRegistry,
+            mode: CliMode,
+            quiet: Boolean = false
+    ): List<PluginJarManifest>? {
+        log.log(Level.INFO, "Creating plugins module layer")
+
+        val pluginModulesFinder = ModuleFinder.of(pluginsDir)
 
         val pluginsLayer = try {
             val bootLayer = ModuleLayer.boot()
 
-            val pluginModulesFinder = ModuleFinder.of(pluginsDir)
             val pluginModules = pluginModulesFinder.findAll().map {
                 it.descriptor().name()
             }
@@ -78,39 +135,102 @@ internal class PluginLoader {
         } catch (e: Exception) {
             log.log(Level.WARNING, "Error during loading module layer from directory $pluginsDir", e)
             writer.println("Error during loading module layer from directory $pluginsDir".bgRed())
-            return
+            return null
+        }
+
+        val pluginsByModule = mutableMapOf<String, MutableList<PluginManifest>>()
+
+        for (plugin in loadPlugins(pluginsLayer)) {
+            val commands = if (acceptPlugin(plugin, mode, quiet)) initPlugin(plugin, commandsRegistry, mode) else emptyList()
+
+            pluginsByModule.getOrPut(plugin.javaClass.module.name) { mutableListOf() } +=
+                    PluginManifest(plugin.javaClass.name, getPluginVersion(plugin), commands, hasEventSubscribers(plugin))
         }
 
-        loadPlugins(pluginsLayer, mode)
+        val modulesByJar = pluginModulesFinder.findAll()
+                .filter { it.location().isPresent }
+                .associateBy { Paths.get(it.location().get()).fileName.toString() }
+
+        return jars.map { jar ->
+            val descriptor = modulesByJar[jar.file]?.descriptor()
+            PluginJarManifest(
+                    jar.file,
+                    jar.modified,
+                    jar.size,
+                    descriptor?.name(),
+                    descriptor?.rawVersion()?.orElse(null),
+                    descriptor?.let { pluginsByModule[it.name()] }.orEmpty())
+        }
+    }
+
+    /**
+     * Delivers [InitPluginEvent] only to the [plugin], as other plugins are already initialized,
+     * and registers it in the event bus.
+     *
+     * @return names of top level commands, registered by the plugin
+     */
+    private fun initPlugin(plugin: CliPlugin, commandsRegistry: CommandsRegistry, mode: CliMode): List<String> {
+        val registered = commandsRegistry.commandTree.children.keys.toSet()
+
+        EventBus().apply {
+            register(plugin)
+            post(InitPluginEvent(commandsRegistry, mode))
+        }
+        bus.register(plugin)
+
+        return commandsRegistry.commandTree.children.keys.filter { it !in registered }
     }
 
-    private fun loadPlugins(pluginsLayer: ModuleLayer, mode: CliMode) {
+    /**
+     * Instantiates plugins, provided by modules of [pluginsLayer], that aren't loaded yet.
+     */
+    private fun loadPlugins(pluginsLayer: ModuleLayer): List<CliPlugin> {
         log.log(Level.INFO, "Start loading plugins")
 
-        val pluginsIterator = ServiceLoader.load(pluginsLayer, CliPlugin::class.java).iterator()
+        val plugins = mutableListOf<CliPlugin>()
+
+        val providers = ServiceLoader.load(pluginsLayer, CliPlugin::class.java).stream().iterator()
 
-        while (pluginsIterator.hasNext()) {
+        while (providers.hasNext()) {
             try {
-                val plugin = pluginsIterator.next()
+                val provider = providers.next()
 
-                if (plugin.javaClass in context.plugins.map { it.javaClass })
+                if (provider.type().module.layer != pluginsLayer || context.plugins.any { it.javaClass == provider.type() })
                     continue
 
-                val version = getPluginVersion(plugin)
-                if (version != API_VERSION) {
-                    writer.println("Plugin's ${plugin.javaClass.name} version ($version) doesn't correspond current CUBA CLI version ($API_VERSION)".bgRed())
-                    continue
-                }
-                if (plugin !is CubaPlugin && mode == CliMode.SHELL) {
-                    writer.println("Loaded plugin @|green ${plugin.javaClass.name}|@.")
-                }
-                bus.register(plugin)
-                context.registerPlugin(plugin)
+                plugins += provider.get()
             } catch (e: ServiceConfigurationError) {
                 log.log(Level.SEVERE, e) { "Error loading plugin" }
                 writer.println(e.message)
             }
         }
+
+        return plugins
+    }
+
+    /**
+     * Checks, if [plugin] has [Subscribe] methods for events other than [InitPluginEvent].
+     * Methods are looked up in the same classes and interfaces, as in [EventBus.register].
+     */
+    private fun hasEventSubscribers(plugin: CliPlugin): Boolean =
+            TypeToken.of(plugin.javaClass).types.rawTypes().any { type ->
+                type.declaredMethods.any {
+                    it.isAnnotationPresent(Subscribe::class.java) && !it.isSynthetic &&
+                            it.parameterTypes.singleOrNull() != InitPluginEvent::class.java
+                }
+            }
+
+    private fun acceptPlugin(plugin: CliPlugin, mode: CliMode, quiet: Boolean = false): Boolean {
+        val version = getPluginVersion(plugin)
+        if (version != API_VERSION) {
+            writer.println("Plugin's ${plugin.javaClass.name} version ($version) doesn't correspond current CUBA CLI version ($API_VERSION)".bgRed())
+            return false
+        }
+        if (plugin !is CubaPlugin && mode == CliMode.SHELL && !quiet) {
+            writer.println("Loaded plugin @|green ${plugin.javaClass.name}|@.")
+        }
+        context.registerPlugin(plugin)
+        return true
     }
 
     private fun getPluginVersion(plugin: CliPlugin): Int {
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli
+
+import com.google.gson.Gson
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectModelCache
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.logging.Level
+
+/**
+ * Persisted manifests of plugin jars, that allow to register plugin commands without resolving plugin module layers.
+ *
+ * Manifests are stored by plugins directory, as all jars of a directory are resolved in a single module layer.
+ * Manifests of a directory are valid, while names, modification times and sizes of its jars are the same.
+ */
+internal class PluginManifestCache(
+        private val cacheFile: Path = ProjectModelCache.CACHE_ROOT.resolve("plugins.json")
+) {
+    private val logger by thisClassLogger()
+
+    private val gson = Gson()
+
+    private val directories: MutableMap<String, List<PluginJarManifest>> by lazy { read() }
+
+    private var changed = false
+
+    /**
+     * Returns manifests of [directory] jars, if they were recorded for the same [jars].
+     */
+    fun get(directory: Path, jars: List<JarFingerprint>): List<PluginJarManifest>? =
+            directories[key(directory)]?.takeIf { manifests ->
+                manifests.map { it.fingerprint }.toSet() == jars.toSet()
+            }
+
+    fun put(directory: Path, manifests: List<PluginJarManifest>) {
+        directories[key(directory)] = manifests
+        changed = true
+    }
+
+    /**
+     * Writes manifests, if they were changed. Failures are only logged, as manifests will be recorded on the next start.
+     */
+    fun save() {
+        if (!changed)
+            return
+
+        try {
+            val cacheDirectory = cacheFile.toAbsolutePath().parent
+            Files.createDirectories(cacheDirectory)
+            val tmpFile = Files.createTempFile(cacheDirectory, cacheFile.fileName.toString(), ".tmp")
+            Files.newBufferedWriter(tmpFile).use {
+                gson.toJson(CachedManifests(directories), it)
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            changed = false
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to save plugin manifests $cacheFile", e)
+        }
+    }
+
+    private fun read(): MutableMap<String, List<PluginJarManifest>> {
+        if (!Files.exists(cacheFile))
+            return mutableMapOf()
+
+        return try {
+            Files.newBufferedReader(cacheFile).use {
+                gson.fromJson(it, CachedManifests::class.java)
+            }?.directories?.toMutableMap() ?: mutableMapOf()
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Unable to read plugin manifests $cacheFile", e)
+            mutableMapOf()
+        }
+    }
+
+    private fun key(directory: Path): String = directory.toAbsolutePath().normalize().toString()
+
+    private class CachedManifests(val directories: Map<String, List<PluginJarManifest>> = emptyMap())
+
+    companion object {
+        /**
+         * Lists jars of [directory] without opening them.
+         */
+        fun jarsOf(directory: Path): List<JarFingerprint> {
+            if (!Files.isDirectory(directory))
+                return emptyList()
+
+            return Files.newDirectoryStream(directory, "*.jar").use { jars ->
+                jars.filter { Files.isRegularFile(it) }.map {
+                    val attributes = Files.readAttributes(it, BasicFileAttributes::class.java)
+                    JarFingerprint(it.fileName.toString(), attributes.lastModifiedTime().toMillis(), attributes.size())
+                }
+            }
+        }
+    }
+}
+
+internal data class JarFingerprint(val file: String, val modified: Long, val size: Long)
+
+internal data class PluginJarManifest(
+        val file: String = "",
+        val modified: Long = 0,
+        val size: Long = 0,
+        val moduleName: String? = null,
+        val version: String? = null,
+        val plugins: List<PluginManifest> = emptyList()
+) {
+    val fingerprint: JarFingerprint
+        get() = JarFingerprint(file, modified, size)
+}
+
+/**
+ * Plugin class with its API version and names of top level commands, that it registers on [com.haulmont.cuba.cli.event.InitPluginEvent].
+ *
+ * [eventSubscriber] is true, if the plugin subscribes other events, so it can't be loaded on the first use of its commands.
+ * It is true by default, as manifests recorded without it may belong to such plugins.
+ */
+internal data class PluginManifest(
+        val className: String = "",
+        val apiVersion: Int = 0,
+        val commands: List<String> = emptyList(),
+        val eventSubscriber: Boolean = true
+)
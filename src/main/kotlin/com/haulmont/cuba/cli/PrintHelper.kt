@@ -17,8 +17,10 @@
 package com.haulmont.cuba.cli
 
 import com.beust.jcommander.ParameterException
+import com.google.common.eventbus.EventBus
 import com.haulmont.cuba.cli.commands.CommandExecutionException
 import com.haulmont.cuba.cli.commands.CommonParameters
+import com.haulmont.cuba.cli.event.FileWrittenEvent
 import org.kodein.di.generic.instance
 import java.io.PrintWriter
 import java.io.StringWriter
@@ -29,6 +31,8 @@ class PrintHelper : GenerationProgressPrinter {
 
     private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
 
+    private val bus: EventBus by kodein.instance()
+
     private val messages by localMessages()
 
     private var lastStacktrace: String = ""
@@ -59,11 +63,28 @@ class PrintHelper : GenerationProgressPrinter {
     }
 
     override fun fileCreated(path: Path) {
-        writer.println("\tcreated  ".green() + relativize(path))
+        writer.println("\tcreated   ".green() + relativize(path))
     }
 
     override fun fileModified(path: Path) {
-        writer.println("\tmodified ".green() + relativize(path))
+        writer.println("\tmodified  ".green() + relativize(path))
+    }
+
+    /**
+     * Reports a file, that was regenerated, but wasn't rewritten as its content is the same.
+     */
+    fun fileUnchanged(path: Path) {
+        writer.println("\tunchanged ".white() + relativize(path))
+    }
+
+    /**
+     * Reports [path], written by a command, as created or modified, and posts [FileWrittenEvent] for it,
+     * so cached values of the file aren't used by the next command.
+     */
+    fun fileWritten(path: Path, created: Boolean = false) {
+        if (created) fileCreated(path) else fileModified(path)
+
+        bus.post(FileWrittenEvent(path, created))
     }
 
     private fun printFailMessage(e: Exception) {
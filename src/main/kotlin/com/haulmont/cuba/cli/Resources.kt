@@ -83,10 +83,19 @@ class Resources(private val cliPlugin: CliPlugin) {
                     }
         }
 
-        private fun getFileSystem(templateUri: URI?) = try {
+        /**
+         * Resources are resolved by the command thread and by the project warm up thread,
+         * so the jar file system is created under the lock. It still may be created outside, e.g. by a plugin.
+         */
+        @Synchronized
+        private fun getFileSystem(templateUri: URI?): FileSystem = try {
             FileSystems.getFileSystem(templateUri)
         } catch (e: FileSystemNotFoundException) {
-            FileSystems.newFileSystem(templateUri, mutableMapOf<String, Any>())
+            try {
+                FileSystems.newFileSystem(templateUri, mutableMapOf<String, Any>())
+            } catch (ex: FileSystemAlreadyExistsException) {
+                FileSystems.getFileSystem(templateUri)
+            }
         }
 
         private val jrtFileSystem: FileSystem? = try {
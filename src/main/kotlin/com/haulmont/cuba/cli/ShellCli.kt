@@ -16,15 +16,9 @@
 
 package com.haulmont.cuba.cli
 
-import com.beust.jcommander.MissingCommandException
-import com.beust.jcommander.ParameterException
-import com.google.common.eventbus.EventBus
 import com.haulmont.cuba.cli.commands.*
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectModel
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
-import com.haulmont.cuba.cli.event.AfterCommandExecutionEvent
-import com.haulmont.cuba.cli.event.BeforeCommandExecutionEvent
-import com.haulmont.cuba.cli.event.ErrorEvent
 import org.fusesource.jansi.Ansi
 import org.jline.builtins.Completers
 import org.jline.builtins.Completers.TreeCompleter.Node
@@ -33,7 +27,6 @@ import org.jline.reader.Completer
 import org.jline.reader.EndOfFileException
 import org.jline.reader.LineReader
 import org.jline.reader.UserInterruptException
-import org.jline.reader.impl.LineReaderImpl
 import org.jline.terminal.Terminal
 import org.jline.terminal.impl.DumbTerminal
 import org.kodein.di.generic.instance
@@ -41,18 +34,12 @@ import java.io.PrintWriter
 
 class ShellCli(private val commandsRegistry: CommandsRegistry) : Cli {
 
-    private val commandParser: CommandParser
-
-    private val cliContext: CliContext by kodein.instance()
+    private val commandDispatcher: CommandDispatcher
 
     private val writer: PrintWriter by kodein.instance()
 
-    private val printHelper: PrintHelper by kodein.instance()
-
     private val terminal: Terminal by kodein.instance()
 
-    private val bus: EventBus by kodein.instance()
-
     private val messages by localMessages()
 
     private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
@@ -64,60 +51,66 @@ class ShellCli(private val commandsRegistry: CommandsRegistry) : Cli {
             command("version", VersionCommand)
             command("exit", ExitCommand)
             command("cd", CdCommand()) {
-                completer(DirectoriesCompleter(workingDirectoryManager.workingDirectory))
+                completer(DirectoriesCompleter { workingDirectoryManager.workingDirectory })
             }
             command("parameters", ShowNonInteractiveParameters(commandsRegistry))
+            command("batch", BatchCommand(commandsRegistry))
         }
 
-        commandParser = CommandParser(commandsRegistry, shellMode = true)
+        commandDispatcher = CommandDispatcher(CommandParser(commandsRegistry, shellMode = true))
     }
 
-    private val lineReader: LineReader by kodein.instance(arg = createCommandsCompleter(commandsRegistry))
+    private var commandTree: CommandTreeNode? = null
 
-    override fun run() {
-        printWelcome()
+    private lateinit var treeCompleter: Completers.TreeCompleter
 
-        while (true) {
-            CommonParameters.reset()
-            commandParser.reset()
+    /**
+     * Completes registered commands. Plugin of a deferred command is activated, when the command arguments are completed.
+     */
+    private val commandsCompleter: Completer = Completer { reader, line, candidates ->
+        if (line.wordIndex() > 0) {
+            line.words().firstOrNull()?.let { commandsRegistry.activate(it, quiet = true) }
+        }
+        getTreeCompleter().complete(reader, line, candidates)
+    }
+
+    private val lineReader: LineReader by kodein.instance(arg = commandsCompleter)
 
-            val command = try {
+    override fun run() {
+        StartupProfiler.phase("welcome") { printWelcome() }
 
-                (lineReader as? LineReaderImpl)?.completer = createCommandsCompleter(commandsRegistry)
+        while (true) {
+            val line = try {
+                val prompt = StartupProfiler.phase("prompt") { buildPrompt() }
+                StartupProfiler.finish(CliMode.SHELL)
 
-                val line = lineReader.readLine(buildPrompt()).also {
+                lineReader.readLine(prompt).also {
                     it != null || return
                 }.takeIf {
                     it.isNotBlank()
                 } ?: continue
-
-                val parsedLine = lineReader.parser.parse(line, 0)
-                val args = parsedLine.words().toTypedArray()
-                commandParser.parseCommand(args)
             } catch (e: UserInterruptException) {
                 return
-            } catch (e: MissingCommandException) {
-                printHelper.unrecognizedCommand()
-                continue
-            } catch (e: ParameterException) {
-                printHelper.unrecognizedParameters(e)
-                continue
             } catch (e: EndOfFileException) {
                 return
             }
 
-            if (CommonParameters.help) {
-                commandParser.printHelp(command)
-                continue
-            }
+            val args = lineReader.parser.parse(line, 0).words().toTypedArray()
+            if (commandDispatcher.dispatch(args) == CommandDispatcher.Result.EXIT)
+                return
+        }
+    }
 
-            when (command) {
-                is HelpCommand -> commandParser.printHelp()
-                is Stacktrace -> printHelper.printLastStacktrace()
-                is ExitCommand -> return
-                else -> evalCommand(command)
-            }
+    /**
+     * Returns tree completer of registered commands, which is rebuilt only if the registry has changed.
+     */
+    private fun getTreeCompleter(): Completers.TreeCompleter {
+        val tree = commandsRegistry.commandTree
+        if (tree !== commandTree) {
+            treeCompleter = createCommandsCompleter(tree)
+            commandTree = tree
         }
+        return treeCompleter
     }
 
     private fun buildPrompt(): String = try {
@@ -129,20 +122,6 @@ class ShellCli(private val commandsRegistry: CommandsRegistry) : Cli {
         PROMPT
     }
 
-    private fun evalCommand(command: CliCommand) {
-        bus.post(BeforeCommandExecutionEvent(command))
-        try {
-            command.execute()
-        } catch (e: EndOfFileException) {
-        } catch (e: UserInterruptException) {
-        } catch (e: Exception) {
-            printHelper.handleCommandException(e)
-            bus.post(ErrorEvent(e))
-        }
-        bus.post(AfterCommandExecutionEvent(command))
-        cliContext.clearModels()
-    }
-
     private fun printWelcome() {
         if (terminal !is DumbTerminal) {
             writer.println(messages["welcomeMessage"].trimMargin())
@@ -157,44 +136,20 @@ class ShellCli(private val commandsRegistry: CommandsRegistry) : Cli {
     }
 }
 
-private fun createCommandsCompleter(commandsRegistry: CommandsRegistry): Completers.TreeCompleter {
-    val rootBuilders = mutableListOf<NodeBuilder>()
-    val stack = mutableListOf<NodeBuilder>()
-
-    commandsRegistry.traverse(object : CommandVisitor {
-        override fun enterCommand(command: CommandRecord) {
-            val builder = NodeBuilder(command.name, command.completer)
-            if (stack.isEmpty()) {
-                rootBuilders += builder
-            } else {
-                stack.last().builders += builder
-            }
-            stack += builder
-        }
-
-        override fun exitCommand() {
-            stack.removeAt(stack.lastIndex)
-        }
-    })
+private fun createCommandsCompleter(tree: CommandTreeNode): Completers.TreeCompleter =
+        Completers.TreeCompleter(*tree.buildNodes())
 
-    return Completers.TreeCompleter(*rootBuilders.buildNodes())
-}
-
-private class NodeBuilder(val name: String, val completer: Completer?) {
-    val builders: MutableList<NodeBuilder> = mutableListOf()
-
-    fun build(): Node = when {
-        builders.isEmpty() -> if (completer == null) {
-            node(name)
-        } else {
-            node(name, node(completer))
-        }
-        else -> if (completer == null) {
-            node(name, *builders.buildNodes())
-        } else {
-            node(name, *builders.buildNodes(), node(completer))
-        }
+private fun CommandTreeNode.buildNode(): Node = when {
+    children.isEmpty() -> if (completer == null) {
+        node(name)
+    } else {
+        node(name, node(completer))
+    }
+    else -> if (completer == null) {
+        node(name, *buildNodes())
+    } else {
+        node(name, *buildNodes(), node(completer))
     }
 }
 
-private fun MutableList<NodeBuilder>.buildNodes() = map { it.build() }.toTypedArray()
\ No newline at end of file
+private fun CommandTreeNode.buildNodes() = children.values.map { it.buildNode() }.toTypedArray()
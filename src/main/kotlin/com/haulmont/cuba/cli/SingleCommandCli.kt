@@ -16,55 +16,24 @@
 
 package com.haulmont.cuba.cli
 
-import com.beust.jcommander.MissingCommandException
-import com.beust.jcommander.ParameterException
-import com.google.common.eventbus.EventBus
 import com.haulmont.cuba.cli.commands.*
-import com.haulmont.cuba.cli.event.AfterCommandExecutionEvent
-import com.haulmont.cuba.cli.event.BeforeCommandExecutionEvent
-import com.haulmont.cuba.cli.event.ErrorEvent
-import org.kodein.di.generic.instance
 
 class SingleCommandCli(private val args: Array<String>, commandsRegistry: CommandsRegistry) : Cli {
 
-    private val bus: EventBus by kodein.instance()
-
-    private val printHelper: PrintHelper by kodein.instance()
-
-    private val commandParser: CommandParser = CommandParser(commandsRegistry.apply(::registerBaseCommands), false)
+    private val commandDispatcher = CommandDispatcher(CommandParser(commandsRegistry.apply(::registerBaseCommands), false))
 
     override fun run() {
-        val command = try {
-            commandParser.parseCommand(args)
-        } catch (e: MissingCommandException) {
-            printHelper.unrecognizedCommand()
-            return
-        } catch (e: ParameterException) {
-            printHelper.unrecognizedParameters(e)
-            return
-        }
-
-        evalCommand(command)
+        execute(args)
     }
 
-    private fun evalCommand(command: CliCommand) {
-        if (CommonParameters.help) {
-            commandParser.printHelp(command)
-            return
-        }
-
-        bus.post(BeforeCommandExecutionEvent(command))
-        try {
-            when (command) {
-                is HelpCommand -> commandParser.printHelp()
-                else -> command.execute()
-            }
-        } catch (e: Exception) {
-            printHelper.handleCommandException(e)
-            bus.post(ErrorEvent(e))
-        }
-        bus.post(AfterCommandExecutionEvent(command))
-    }
+    /**
+     * Parses and evaluates [args]. As the parser is reset before every next command,
+     * the same cli may execute several commands, e.g. in [com.haulmont.cuba.cli.daemon.CliDaemon].
+     *
+     * @return false, if the command wasn't recognized or failed
+     */
+    fun execute(args: Array<String>): Boolean =
+            commandDispatcher.dispatch(args) == CommandDispatcher.Result.OK
 }
 
 private fun registerBaseCommands(commandsRegistry: CommandsRegistry) =
@@ -72,4 +41,5 @@ private fun registerBaseCommands(commandsRegistry: CommandsRegistry) =
             command("help", HelpCommand)
             command("version", VersionCommand)
             command("parameters", ShowNonInteractiveParameters(commandsRegistry))
+            command("batch", BatchCommand(commandsRegistry))
         }
\ No newline at end of file
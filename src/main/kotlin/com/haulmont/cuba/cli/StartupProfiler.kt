@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli
+
+import com.google.gson.GsonBuilder
+import org.kodein.di.direct
+import org.kodein.di.generic.instance
+import java.io.PrintWriter
+import java.lang.management.ManagementFactory
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.time.Instant
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Measures startup phases of the CLI.
+ *
+ * `--profile-startup` launch option prints the table of phases after the startup, that is before the first prompt
+ * in shell mode, or after the command in single command mode. `--profile-startup-file <path>` appends the same data
+ * as a JSON line to the file, so startup time of different CLI versions may be compared.
+ *
+ * When profiling is disabled, [phase] costs only a field read.
+ */
+internal object StartupProfiler {
+    private const val PROFILE_OPTION = "--profile-startup"
+
+    private const val REPORT_FILE_OPTION = "--profile-startup-file"
+
+    private val log: Logger = Logger.getLogger(StartupProfiler::class.java.name)
+
+    var timer: PhaseTimer? = null
+        private set
+
+    private var printTable: Boolean = false
+
+    private var reportFile: Path? = null
+
+    /**
+     * Enables profiling, if [args] contain profiling options.
+     *
+     * @return args without profiling options, as they aren't known by commands
+     */
+    fun configure(args: Array<String>): Array<String> {
+        if (args.none { it.startsWith(PROFILE_OPTION) })
+            return args
+
+        val remaining = mutableListOf<String>()
+        var i = 0
+        while (i < args.size) {
+            val arg = args[i]
+            when {
+                arg == PROFILE_OPTION -> printTable = true
+                arg == REPORT_FILE_OPTION && i + 1 < args.size -> reportFile = Paths.get(args[++i])
+                arg.startsWith("$REPORT_FILE_OPTION=") -> reportFile = Paths.get(arg.substringAfter('='))
+                else -> remaining += arg
+            }
+            i++
+        }
+
+        if (printTable || reportFile != null) {
+            timer = PhaseTimer().apply {
+                record("jvm", ManagementFactory.getRuntimeMXBean().uptime * 1_000_000)
+            }
+        }
+
+        return remaining.toTypedArray()
+    }
+
+    inline fun <T> phase(name: String, block: () -> T): T {
+        val timer = timer ?: return block()
+
+        val phase = timer.start(name)
+        try {
+            return block()
+        } finally {
+            timer.end(phase)
+        }
+    }
+
+    /**
+     * Stops profiling and reports the phases. Phases started after this call aren't recorded.
+     */
+    fun finish(mode: CliMode) {
+        val timer = timer ?: return
+        this.timer = null
+
+        if (printTable) {
+            kodein.direct.instance<PrintWriter>().apply {
+                println(timer.formatTable())
+                flush()
+            }
+        }
+
+        reportFile?.let {
+            try {
+                appendRecord(it, timer, mode)
+            } catch (e: Exception) {
+                log.log(Level.WARNING, "Unable to write startup profile to $it", e)
+            }
+        }
+    }
+
+    private fun appendRecord(file: Path, timer: PhaseTimer, mode: CliMode) {
+        val record = StartupRecord(
+                Instant.now().toString(),
+                CLI_VERSION,
+                System.getProperty("java.version"),
+                mode.name,
+                timer.phases.filter { it.depth == 0 }.sumByDouble { it.nanos.toDouble() }.toLong(),
+                timer.phases)
+
+        file.toAbsolutePath().parent?.let { Files.createDirectories(it) }
+        Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND).use {
+            it.write(GsonBuilder().create().toJson(record))
+            it.newLine()
+        }
+    }
+
+    private class StartupRecord(
+            val timestamp: String,
+            val cliVersion: String,
+            val javaVersion: String,
+            val mode: String,
+            val totalNanos: Long,
+            val phases: List<Phase>)
+}
+
+/**
+ * Records duration and bytes, allocated by the current thread, of possibly nested phases.
+ * Phases are kept in the start order, so every phase follows its parent.
+ */
+internal class PhaseTimer(
+        private val clock: () -> Long = System::nanoTime,
+        private val allocatedBytes: () -> Long = threadAllocatedBytes()
+) {
+    private val records: MutableList<Phase> = mutableListOf()
+
+    private var depth: Int = 0
+
+    val phases: List<Phase>
+        get() = records
+
+    fun start(name: String): Phase {
+        val phase = Phase(name, depth)
+        records += phase
+        depth++
+
+        phase.startBytes = allocatedBytes()
+        phase.startNanos = clock()
+        return phase
+    }
+
+    fun end(phase: Phase) {
+        phase.nanos = clock() - phase.startNanos
+        val bytes = allocatedBytes()
+        phase.allocatedBytes = if (bytes < 0 || phase.startBytes < 0) -1 else bytes - phase.startBytes
+        depth--
+    }
+
+    /**
+     * Adds completed phase, that wasn't measured by the timer itself.
+     */
+    fun record(name: String, nanos: Long) {
+        records += Phase(name, depth).also { it.nanos = nanos }
+    }
+
+    fun formatTable(): String = buildString {
+        appendln("Startup profile")
+        appendln(String.format("%-32s %12s %15s", "phase", "time, ms", "allocated, KB"))
+        records.forEach {
+            val allocated = if (it.allocatedBytes < 0) "-" else String.format("%.1f", it.allocatedBytes / 1024.0)
+            appendln(String.format("%-32s %12.2f %15s", "  ".repeat(it.depth) + it.name, it.nanos / 1e6, allocated))
+        }
+        val total = records.filter { it.depth == 0 }.sumByDouble { it.nanos / 1e6 }
+        append(String.format("%-32s %12.2f", "total", total))
+    }
+
+    companion object {
+        /**
+         * Returns bytes allocated by the current thread, or -1, if JVM doesn't support it.
+         */
+        private fun threadAllocatedBytes(): () -> Long {
+            val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+            if (bean == null || !bean.isThreadAllocatedMemorySupported || !bean.isThreadAllocatedMemoryEnabled)
+                return { -1L }
+
+            return { bean.getThreadAllocatedBytes(Thread.currentThread().id) }
+        }
+    }
+}
+
+internal class Phase(val name: String, val depth: Int) {
+    var nanos: Long = 0
+
+    var allocatedBytes: Long = -1
+
+    @Transient
+    internal var startNanos: Long = 0
+
+    @Transient
+    internal var startBytes: Long = -1
+}
@@ -20,6 +20,7 @@ import java.nio.file.Path
 import java.nio.file.Paths
 
 class WorkingDirectoryManager {
+    @Volatile
     var workingDirectory: Path = Paths.get(System.getProperty("user.dir"))
 
     val absolutePath: Path
@@ -19,6 +19,7 @@ package com.haulmont.cuba.cli.commands
 import com.haulmont.cuba.cli.CliContext
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectModel
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
+import com.haulmont.cuba.cli.generation.XmlEditSession
 import org.kodein.di.Kodein
 import org.kodein.di.generic.instance
 import java.nio.file.Files
@@ -46,10 +47,14 @@ abstract class AbstractCommand(kodein: Kodein = com.haulmont.cuba.cli.kodein) :
      */
     val context: CliContext by kodein.instance()
 
+    /**
+     * Executes the command. All xml modifications made by [run] are collected in [XmlEditSession]
+     * and saved after it completes.
+     */
     final override fun execute() {
         preExecute()
 
-        run()
+        XmlEditSession.execute { run() }
 
         postExecute()
     }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.commands
+
+import com.beust.jcommander.Parameter
+import com.beust.jcommander.Parameters
+import com.haulmont.cuba.cli.*
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectFileIndexManager
+import com.haulmont.cuba.cli.daemon.CliDaemon
+import org.jline.reader.SyntaxError
+import org.jline.reader.impl.DefaultParser
+import org.kodein.di.generic.instance
+import java.io.BufferedReader
+import java.io.InputStreamReader
+import java.io.PrintWriter
+import java.nio.file.Files
+
+/**
+ * Executes commands from a file in one process, so the startup, plugins loading and project indexing
+ * are paid once. Every line contains a command with its parameters, the same as in the shell,
+ * blank lines and lines starting with `#` are skipped.
+ *
+ * Commands are executed by [CommandDispatcher] the same way as in the shell, except `exit`, which is rejected.
+ * Each command is executed with its own xml edit session, so its modifications are saved before the next command starts.
+ * Project file indexes are kept between commands and updated with created files.
+ */
+@Parameters(commandDescription = "Executes commands from the file, one command per line")
+class BatchCommand(private val commandsRegistry: CommandsRegistry) : CliCommand, UsageProvider {
+
+    @Parameter(description = "File with commands, or - to read them from standard input")
+    private var file: String? = null
+
+    @Parameter(names = ["--continue-on-error"], description = "Executes remaining commands, if a command fails")
+    private var continueOnError: Boolean = false
+
+    private val writer: PrintWriter by kodein.instance()
+
+    private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
+
+    private val fileIndexManager: ProjectFileIndexManager by kodein.instance()
+
+    override fun printUsage(): String = """
+        Executes commands from the file, one command per line. Blank lines and lines starting with # are skipped.
+        Usage: batch [--continue-on-error] file|-
+    """.trimIndent()
+
+    override fun execute() {
+        val file = file ?: throw CommandExecutionException("You should specify file with commands, or - to read standard input")
+
+        val lines = readLines(file)
+
+        val commandDispatcher = CommandDispatcher(CommandParser(commandsRegistry, shellMode = true))
+        val lineParser = DefaultParser()
+        val results = mutableListOf<Result>()
+
+        val incremental = fileIndexManager.incremental
+        fileIndexManager.incremental = true
+        try {
+            for ((index, line) in lines.withIndex()) {
+                val commandLine = line.trim()
+                if (commandLine.isEmpty() || commandLine.startsWith("#"))
+                    continue
+
+                writer.println("${index + 1}: $commandLine".green())
+
+                val start = System.nanoTime()
+                val status = try {
+                    execute(commandDispatcher, lineParser.parse(commandLine, 0).words().toTypedArray())
+                } catch (e: SyntaxError) {
+                    writer.println("Unable to parse command: ${e.message}".bgRed())
+                    Status.UNRECOGNIZED
+                }
+                results += Result(index + 1, commandLine, status, System.nanoTime() - start)
+
+                if (status != Status.OK && !continueOnError)
+                    break
+            }
+        } finally {
+            fileIndexManager.incremental = incremental
+            CommonParameters.reset()
+        }
+
+        printSummary(results)
+
+        val failed = results.count { it.status != Status.OK }
+        if (failed > 0) {
+            throw CommandExecutionException("$failed of ${results.size} commands failed")
+        }
+    }
+
+    private fun readLines(file: String): List<String> {
+        if (file == "-") {
+//            in daemon standard input of the client is available only through the terminal
+            val input = CliDaemon.currentTerminal?.input() ?: System.`in`
+            return BufferedReader(InputStreamReader(input)).readLines()
+        }
+
+        val path = workingDirectoryManager.absolutePath.resolve(file)
+        if (!Files.isRegularFile(path))
+            throw CommandExecutionException("File $path not found")
+
+        return Files.readAllLines(path)
+    }
+
+    private fun execute(commandDispatcher: CommandDispatcher, args: Array<String>): Status =
+            when (commandDispatcher.dispatch(args)) {
+                CommandDispatcher.Result.OK -> Status.OK
+                CommandDispatcher.Result.FAILED -> Status.FAILED
+                CommandDispatcher.Result.UNRECOGNIZED -> Status.UNRECOGNIZED
+                CommandDispatcher.Result.EXIT -> {
+                    writer.println("Command exit can't be used in batch".bgRed())
+                    Status.UNRECOGNIZED
+                }
+            }
+
+    private fun printSummary(results: List<Result>) {
+        writer.println()
+        writer.println("Batch summary")
+        writer.println(String.format("%6s %10s  %-12s %s", "line", "time, ms", "status", "command"))
+        results.forEach {
+            writer.println(String.format("%6d %10.1f  %-12s %s", it.line, it.nanos / 1e6, it.status.name.toLowerCase(), it.command))
+        }
+        writer.println(String.format("%6s %10.1f", "total", results.sumByDouble { it.nanos / 1e6 }))
+    }
+
+    private enum class Status {
+        OK,
+        FAILED,
+        UNRECOGNIZED
+    }
+
+    private class Result(val line: Int, val command: String, val status: Status, val nanos: Long)
+}
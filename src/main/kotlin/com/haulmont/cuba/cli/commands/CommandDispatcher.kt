@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.commands
+
+import com.beust.jcommander.MissingCommandException
+import com.beust.jcommander.ParameterException
+import com.google.common.eventbus.EventBus
+import com.haulmont.cuba.cli.CliContext
+import com.haulmont.cuba.cli.PrintHelper
+import com.haulmont.cuba.cli.event.AfterCommandExecutionEvent
+import com.haulmont.cuba.cli.event.BeforeCommandExecutionEvent
+import com.haulmont.cuba.cli.event.ErrorEvent
+import com.haulmont.cuba.cli.kodein
+import org.jline.reader.EndOfFileException
+import org.jline.reader.UserInterruptException
+import org.kodein.di.generic.instance
+
+/**
+ * Parses and executes commands in the same way in the shell, in single command mode and in [BatchCommand].
+ *
+ * `--help` parameter, [HelpCommand] and [Stacktrace] are handled without execution events.
+ * [ExitCommand] isn't executed, it is up to the caller to stop on [Result.EXIT].
+ */
+class CommandDispatcher(private val commandParser: CommandParser) {
+
+    private val bus: EventBus by kodein.instance()
+
+    private val printHelper: PrintHelper by kodein.instance()
+
+    private val context: CliContext by kodein.instance()
+
+    /**
+     * Parses [args] and executes the command. Parameters of the previous command are reset before parsing.
+     */
+    fun dispatch(args: Array<String>): Result {
+        commandParser.reset()
+
+        val command = try {
+            commandParser.parseCommand(args)
+        } catch (e: MissingCommandException) {
+            printHelper.unrecognizedCommand()
+            return Result.UNRECOGNIZED
+        } catch (e: ParameterException) {
+            printHelper.unrecognizedParameters(e)
+            return Result.UNRECOGNIZED
+        }
+
+        return execute(command)
+    }
+
+    private fun execute(command: CliCommand): Result {
+        if (CommonParameters.help) {
+            commandParser.printHelp(command)
+            return Result.OK
+        }
+
+        when (command) {
+            is HelpCommand -> {
+                commandParser.printHelp()
+                return Result.OK
+            }
+            is Stacktrace -> {
+                printHelper.printLastStacktrace()
+                return Result.OK
+            }
+            is ExitCommand -> return Result.EXIT
+        }
+
+        bus.post(BeforeCommandExecutionEvent(command))
+        val result = try {
+            command.execute()
+            Result.OK
+        } catch (e: EndOfFileException) {
+            Result.FAILED
+        } catch (e: UserInterruptException) {
+            Result.FAILED
+        } catch (e: Exception) {
+            printHelper.handleCommandException(e)
+            bus.post(ErrorEvent(e))
+            Result.FAILED
+        }
+        bus.post(AfterCommandExecutionEvent(command))
+        context.clearModels()
+
+        return result
+    }
+
+    enum class Result {
+        OK,
+        FAILED,
+        UNRECOGNIZED,
+        EXIT
+    }
+}
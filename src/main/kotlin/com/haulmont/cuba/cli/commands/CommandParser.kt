@@ -18,23 +18,42 @@ package com.haulmont.cuba.cli.commands
 
 import com.beust.jcommander.JCommander
 import com.beust.jcommander.Parameter
+import com.beust.jcommander.ParameterException
 import com.haulmont.cuba.cli.kodein
 import org.kodein.di.generic.instance
 import java.io.PrintWriter
 import kotlin.reflect.full.memberProperties
 import kotlin.reflect.jvm.javaField
 
+/**
+ * Parses commands of [commandsRegistry].
+ *
+ * JCommander keeps parsing state, that can't be reset, and commands keep parsed parameters in their fields,
+ * so every parse requires new commander and command instances. To keep it cheap, commander is built
+ * only for the commands on the path, found by [CommandsRegistry.commandTree], and their direct subcommands.
+ * If such commander fails to parse the arguments, they are parsed once more by the commander of all commands,
+ * so the result and errors are the same as before.
+ */
 class CommandParser(private val commandsRegistry: CommandsRegistry, private val shellMode: Boolean = false) {
 
     private val writer: PrintWriter by kodein.instance()
 
-    private lateinit var commander: JCommander
+    /**
+     * Commander of the last parsed command.
+     */
+    private var commander: JCommander? = null
 
-    init {
-        initCommander()
+    fun parseCommand(args: Array<String>): CliCommand = try {
+        args.firstOrNull { !it.startsWith("-") }?.let { commandsRegistry.activate(it) }
+
+        parse(createCommander(findCommandPath(args)), args)
+    } catch (e: ParameterException) {
+        CommonParameters.reset()
+        parse(createCommander(null), args)
     }
 
-    fun parseCommand(args: Array<String>): CliCommand {
+    private fun parse(commander: JCommander, args: Array<String>): CliCommand {
+        this.commander = commander
         commander.parse(*args)
         return getParsedCommand(commander)
     }
@@ -43,7 +62,8 @@ class CommandParser(private val commandsRegistry: CommandsRegistry, private val
         launchOptionsHelp()
 
         writer.println("CUBA CLI commands")
-        printHelp(commander)
+        commandsRegistry.activateAll()
+        printHelp(createCommander(null))
 
         writer.println("See Quick start tutorial on https://github.com/cuba-platform/cuba-cli/wiki/Quick-Start\n")
     }
@@ -85,30 +105,67 @@ class CommandParser(private val commandsRegistry: CommandsRegistry, private val
 
     fun reset() {
         CommonParameters.reset()
-        initCommander()
+        commander = null
     }
 
-    private fun initCommander() {
-        commander = JCommander().apply {
+    /**
+     * Finds names of commands in [args] the same way as JCommander does, but without knowledge of option arities,
+     * so all options are skipped.
+     */
+    private fun findCommandPath(args: Array<String>): List<String> {
+        val path = mutableListOf<String>()
+        var node = commandsRegistry.commandTree
+
+        for (arg in args) {
+            if (arg.startsWith("-"))
+                continue
+
+            node = node.children[arg] ?: break
+            path += arg
+        }
+
+        return path
+    }
+
+    /**
+     * Creates commander of commands on the [path] and their direct subcommands, or of all commands, if [path] is null.
+     */
+    private fun createCommander(path: List<String>?): JCommander {
+        val commander = JCommander().apply {
             programName = if (!shellMode) "cuba" else ""
             if (!shellMode) {
                 addObject(CommonParameters)
             }
         }
 
-        val stack: MutableList<JCommander> = mutableListOf(commander)
+        val stack: MutableList<JCommander?> = mutableListOf(commander)
+        val names = mutableListOf<String>()
 
         commandsRegistry.traverse(object : CommandVisitor {
             override fun enterCommand(command: CommandRecord) {
-                stack += stack.last().createCommand(command.name, command.cliCommand)
+                names += command.name
+                val parent = stack.last()
+                stack += if (parent != null && (path == null || isOnPath(names, path))) {
+                    parent.createCommand(command.name, command.cliCommand)
+                } else null
             }
 
             override fun exitCommand() {
+                names.removeAt(names.lastIndex)
                 stack.removeAt(stack.lastIndex)
             }
         })
+
+        return commander
     }
 
+    private fun isOnPath(names: List<String>, path: List<String>): Boolean =
+            if (names.size <= path.size) {
+                names == path.take(names.size)
+            } else {
+                names.size == path.size + 1 && names.dropLast(1) == path
+            }
+
     private fun JCommander.createCommand(name: String, command: CliCommand): JCommander {
         this.addCommand(name, listOf(command, CommonParameters))
         return this.commands[name]!!
@@ -121,7 +178,10 @@ class CommandParser(private val commandsRegistry: CommandsRegistry, private val
                 writer.println(it)
             }
 
-    private fun findRoute(command: CliCommand, commander: JCommander = this.commander): List<JCommander> {
+    private fun findRoute(command: CliCommand, commander: JCommander? = this.commander): List<JCommander> {
+        commander ?: return listOf()
+
+
         if (command in commander.objects)
             return listOf(commander)
 
@@ -26,18 +26,83 @@ import org.jline.reader.Completer
 class CommandsRegistry {
     private val builders = mutableListOf<CommandContainerConfiguration.() -> Unit>()
 
+    private var tree: CommandTreeNode? = null
+
+    /**
+     * Activations of not yet loaded plugins by names of their top level commands.
+     */
+    private val deferred: MutableMap<String, (quiet: Boolean) -> Unit> = linkedMapOf()
+
     /**
      * Registers commands in CLI by setup function.
      * Note, that all setup functions executes lazily every time before command name parsing.
      */
     fun command(setup: CommandContainerConfiguration.() -> Unit) {
         builders.add(setup)
+        tree = null
     }
 
     operator fun invoke(setup: CommandContainerConfiguration.() -> Unit) {
         command(setup)
     }
 
+    /**
+     * Registers top level command [names], which commands are registered by [activation] on the first use,
+     * e.g. commands of a plugin, that isn't loaded yet.
+     */
+    internal fun deferred(names: Collection<String>, activation: (quiet: Boolean) -> Unit) {
+        names.forEach { deferred[it] = activation }
+        tree = null
+    }
+
+    /**
+     * Runs activation, that registers deferred command [name], if it isn't run yet.
+     * [quiet] activation shouldn't print anything, e.g. when it is run during completion.
+     */
+    internal fun activate(name: String, quiet: Boolean = false) {
+        val activation = deferred[name] ?: return
+        deferred.values.removeAll { it === activation }
+        tree = null
+
+        activation(quiet)
+    }
+
+    internal fun activateAll() {
+        while (deferred.isNotEmpty()) {
+            activate(deferred.keys.first())
+        }
+    }
+
+    /**
+     * Names and completers of registered commands. The tree is built by a single run of setup functions
+     * and is kept until another setup function is registered. Deferred commands are included as nodes without children.
+     */
+    internal val commandTree: CommandTreeNode
+        get() = tree ?: buildTree().also { tree = it }
+
+    private fun buildTree(): CommandTreeNode {
+        val root = CommandTreeNode("", null)
+        val stack = mutableListOf(root)
+
+        traverse(object : CommandVisitor {
+            override fun enterCommand(command: CommandRecord) {
+                val node = CommandTreeNode(command.name, command.completer)
+                stack.last().children[command.name] = node
+                stack += node
+            }
+
+            override fun exitCommand() {
+                stack.removeAt(stack.lastIndex)
+            }
+        })
+
+        deferred.keys.forEach {
+            root.children.getOrPut(it) { CommandTreeNode(it, null) }
+        }
+
+        return root
+    }
+
     internal fun traverse(visitor: CommandVisitor) {
         BaseCommand().apply {
             builders.forEach { it() }
@@ -58,6 +123,10 @@ interface CommandContainerConfiguration {
 }
 
 interface CommandConfiguration : CommandContainerConfiguration {
+    /**
+     * Registers completer of the command arguments. Completers are reused until the registry changes,
+     * so they should resolve any changing state, like the working directory, on completion.
+     */
     fun completer(completer: Completer)
 }
 
@@ -98,4 +167,8 @@ interface CommandVisitor {
     fun exitCommand()
 }
 
-data class CommandRecord(val name: String, val cliCommand: CliCommand, val completer: Completer?)
\ No newline at end of file
+data class CommandRecord(val name: String, val cliCommand: CliCommand, val completer: Completer?)
+
+internal class CommandTreeNode(val name: String, val completer: Completer?) {
+    val children: MutableMap<String, CommandTreeNode> = linkedMapOf()
+}
\ No newline at end of file
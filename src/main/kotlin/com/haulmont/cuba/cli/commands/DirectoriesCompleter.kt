@@ -25,9 +25,15 @@ import java.nio.file.Files
 import java.nio.file.Path
 
 /**
- * Replacement of default directories completer for normal work on windows
+ * Replacement of default directories completer for normal work on windows.
+ * Current directory is resolved on every completion, so the completer stays valid after directory change.
  */
-class DirectoriesCompleter(currentDir: Path) : Completers.DirectoriesCompleter(currentDir) {
+class DirectoriesCompleter(private val currentDir: () -> Path) : Completers.DirectoriesCompleter(currentDir()) {
+
+    constructor(currentDir: Path) : this({ currentDir })
+
+    override fun getUserDir(): Path = currentDir()
+
     override fun complete(reader: LineReader, commandLine: ParsedLine, candidates: MutableList<Candidate>) {
         val buffer = commandLine.word().substring(0, commandLine.wordCursor())
 
@@ -25,21 +25,21 @@ import java.io.PrintWriter
 @Parameters(commandDescription = "Exit CUBA CLI")
 object ExitCommand : CliCommand {
     override fun execute() {
-//        Command handled in ShellCli
+//        Command handled in CommandDispatcher
     }
 }
 
 @Parameters(commandDescription = "Prints this help")
 object HelpCommand : CliCommand {
     override fun execute() {
-//        Command handled in ShellCli
+//        Command handled in CommandDispatcher
     }
 }
 
 @Parameters(commandDescription = "Prints last stacktrace")
 object Stacktrace : CliCommand {
     override fun execute() {
-//        Command handled in ShellCli
+//        Command handled in CommandDispatcher
     }
 }
 
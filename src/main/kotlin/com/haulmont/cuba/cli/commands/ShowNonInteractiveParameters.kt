@@ -42,6 +42,8 @@ class ShowNonInteractiveParameters(private val commandsRegistry: CommandsRegistr
             return
         }
 
+        commandsRegistry.activate(commandPath.first())
+
         val currentPath = mutableListOf<String>()
 
         commandsRegistry.traverse(object : CommandVisitor {
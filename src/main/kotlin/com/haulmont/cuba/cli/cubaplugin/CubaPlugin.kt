@@ -34,9 +34,11 @@ import com.haulmont.cuba.cli.cubaplugin.gradle.GradleCommand
 import com.haulmont.cuba.cli.cubaplugin.gradle.RunCommand
 import com.haulmont.cuba.cli.cubaplugin.idea.IdeaOpenCommand
 import com.haulmont.cuba.cli.cubaplugin.installcomponent.AddComponentCommand
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectFileIndexManager
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectModel
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectScanException
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectWatchManager
 import com.haulmont.cuba.cli.cubaplugin.premiumrepo.EnablePremiumRepoCommand
 import com.haulmont.cuba.cli.cubaplugin.prefixchange.PrefixChangeCommand
 import com.haulmont.cuba.cli.cubaplugin.project.ProjectInitCommand
@@ -45,7 +47,10 @@ import com.haulmont.cuba.cli.cubaplugin.service.CreateServiceCommand
 import com.haulmont.cuba.cli.cubaplugin.statictemplate.StaticTemplateCommand
 import com.haulmont.cuba.cli.cubaplugin.theme.ThemeExtensionCommand
 import com.haulmont.cuba.cli.cubaplugin.updatescript.UpdateScriptCommand
+import com.haulmont.cuba.cli.event.AfterCommandExecutionEvent
 import com.haulmont.cuba.cli.event.BeforeCommandExecutionEvent
+import com.haulmont.cuba.cli.event.DestroyPluginEvent
+import com.haulmont.cuba.cli.event.FileWrittenEvent
 import com.haulmont.cuba.cli.event.InitPluginEvent
 import org.kodein.di.generic.instance
 import java.io.PrintWriter
@@ -68,8 +73,22 @@ class CubaPlugin : CliPlugin {
 
     private val versionUtils: VersionUtils = VersionUtils()
 
+    private val fileIndexManager: ProjectFileIndexManager by kodein.instance()
+
+    private val projectWarmer: ProjectWarmer by lazy { ProjectWarmer(Resources(this)) }
+
+    private val projectWatchManager: ProjectWatchManager by lazy { ProjectWatchManager() }
+
+    private var shellMode: Boolean = false
+
     @Subscribe
     fun onInit(event: InitPluginEvent) {
+        shellMode = event.cliMode == CliMode.SHELL
+        if (shellMode) {
+            projectWatchManager.directoryChanged()
+            projectWarmer.directoryChanged()
+        }
+
         event.commandsRegistry {
             command("create-app", ProjectInitCommand())
             command("create-entity", CreateEntityCommand())
@@ -100,6 +119,10 @@ class CubaPlugin : CliPlugin {
 
     @Subscribe
     fun beforeCommand(event: BeforeCommandExecutionEvent) {
+        if (shellMode) {
+            projectWarmer.cancel()
+        }
+
         when (event.command) {
             is CdCommand -> return
         }
@@ -122,6 +145,41 @@ class CubaPlugin : CliPlugin {
         }
     }
 
+    @Subscribe
+    fun afterCommand(event: AfterCommandExecutionEvent) {
+        if (shellMode) {
+            projectWatchManager.directoryChanged()
+        }
+
+        val invalidated = !fileIndexManager.incremental
+        if (invalidated) {
+            fileIndexManager.invalidate()
+        }
+
+//        warm up starts after invalidation, so the prepared file index is kept for the next command
+        if (shellMode) {
+            if (invalidated) projectWarmer.indexInvalidated() else projectWarmer.directoryChanged()
+        }
+    }
+
+    /**
+     * Invalidates caches of generated files and adds created files to project file indexes, that are kept between commands.
+     */
+    @Subscribe
+    fun onFileWritten(event: FileWrittenEvent) {
+        projectWatchManager.filesWritten(setOf(event.path))
+        if (event.created) {
+            fileIndexManager.fileCreated(event.path)
+        }
+    }
+
+    @Subscribe
+    fun onDestroy(event: DestroyPluginEvent) {
+        if (shellMode) {
+            projectWatchManager.stop()
+        }
+    }
+
     companion object {
         const val RESOURCES_PATH = "/com/haulmont/cuba/cli/cubaplugin/"
     }
@@ -44,7 +44,7 @@ class ProjectServiceImpl : ProjectService {
                     "$firstAppComponent\n    appComponent(\"$coordinates\")")
             writeText(withNewComponent)
         }
-        printHelper.fileModified(projectStructure.buildGradle)
+        printHelper.fileWritten(projectStructure.buildGradle)
 
         for (module in listOf(ModuleStructure.WEB_MODULE, ModuleStructure.CORE_MODULE)) {
             val webXml = projectStructure.getModule(module).path
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.cubaplugin
+
+import com.haulmont.cuba.cli.Resources
+import com.haulmont.cuba.cli.WorkingDirectoryManager
+import com.haulmont.cuba.cli.cubaplugin.di.cubaKodein
+import com.haulmont.cuba.cli.cubaplugin.model.EntitySearch
+import com.haulmont.cuba.cli.cubaplugin.model.ModuleStructure
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectModel
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
+import com.haulmont.cuba.cli.generation.VelocityHelper
+import com.haulmont.cuba.cli.kodein
+import com.haulmont.cuba.cli.thisClassLogger
+import org.kodein.di.generic.instance
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.logging.Level
+import java.util.stream.Collectors
+
+/**
+ * Prepares caches of the working directory project on a low priority background thread, while the shell waits
+ * for the next command: project model values, source file index, entity index and parsed templates
+ * of the most used commands.
+ *
+ * Nothing is passed to commands directly. Values are prepared through the same thread safe caches, that commands use,
+ * so a command either gets a prepared value, or waits for the value being prepared, or prepares it itself.
+ */
+class ProjectWarmer(private val resources: Resources) {
+
+    private val logger by thisClassLogger()
+
+    private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
+
+    private val entitySearch: EntitySearch by cubaKodein.instance()
+
+    private val velocityHelper = VelocityHelper()
+
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "project-warmer").apply {
+            isDaemon = true
+            priority = Thread.MIN_PRIORITY
+        }
+    }
+
+    /**
+     * Incremented by every warm up start and [cancel], so the outdated warm up stops before its next step.
+     */
+    private val generation = AtomicInteger()
+
+    /**
+     * Directory of the last started warm up. Accessed only by the command thread.
+     */
+    private var warmedDirectory: Path? = null
+
+    @Volatile
+    private var inProgress: Boolean = false
+
+    /**
+     * Starts warm up of the working directory project, if the directory has changed since the last warm up,
+     * or the last warm up was cancelled.
+     */
+    fun directoryChanged() {
+        val directory = workingDirectoryManager.absolutePath.normalize()
+        if (directory == warmedDirectory)
+            return
+
+        start(directory, true)
+    }
+
+    /**
+     * Starts warm up of the source file index and entity index after they were invalidated.
+     * Model values and templates are warmed up only once for a directory, so if the working directory is the same,
+     * they are skipped.
+     */
+    fun indexInvalidated() {
+        val directory = workingDirectoryManager.absolutePath.normalize()
+        if (directory != warmedDirectory) {
+            directoryChanged()
+            return
+        }
+
+        start(directory, false)
+    }
+
+    private fun start(directory: Path, full: Boolean) {
+        warmedDirectory = directory
+        inProgress = true
+
+        val current = generation.incrementAndGet()
+        executor.execute {
+            try {
+                warmUp(directory, full) { generation.get() == current }
+            } catch (e: Exception) {
+                logger.log(Level.FINE, "Project warm up failed", e)
+            } finally {
+                if (generation.get() == current) {
+                    inProgress = false
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the current warm up, e.g. before command execution. Unfinished warm up is started again
+     * by the next [directoryChanged].
+     */
+    fun cancel() {
+        generation.incrementAndGet()
+        if (inProgress) {
+            warmedDirectory = null
+        }
+    }
+
+    private fun warmUp(directory: Path, full: Boolean, isActual: () -> Boolean) {
+        val projectStructure = try {
+            ProjectStructure()
+        } catch (e: Exception) {
+            return
+        }
+        if (projectStructure.path.toAbsolutePath().normalize() != directory)
+            return
+
+        logger.log(Level.FINE, "Warming up project $directory")
+
+        if (!isActual()) return
+        projectStructure.fileIndex.getPackages(ModuleStructure.GLOBAL_MODULE)
+
+        if (!isActual()) return
+        entitySearch.getAllEntities()
+
+        if (!full || !isActual()) return
+        val model = ProjectModel(projectStructure)
+
+        for (templateName in PREPARED_TEMPLATES) {
+            if (!isActual()) return
+
+            val templatePath = model.platformVersion.findMostSuitableVersionDirectory(resources.getTemplate(templateName))
+            prepareTemplates(templatePath)
+        }
+    }
+
+    private fun prepareTemplates(templatePath: Path) {
+        val files = Files.walk(templatePath).use { stream ->
+            stream.filter { Files.isRegularFile(it) && it.fileName.toString() !in TEMPLATE_METADATA }
+                    .collect(Collectors.toList())
+        }
+
+        files.forEach {
+            try {
+                velocityHelper.prepare(it)
+            } catch (e: Exception) {
+//                file may be copied as is, without velocity processing
+                logger.log(Level.FINE, "Unable to parse template $it", e)
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Templates of the most used commands.
+         */
+        private val PREPARED_TEMPLATES = listOf("entity", "screen", "browseScreen", "editScreen", "service")
+
+        private val TEMPLATE_METADATA = listOf("template.xml", "tips.txt")
+    }
+}
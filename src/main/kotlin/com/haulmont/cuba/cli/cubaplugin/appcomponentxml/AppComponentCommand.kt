@@ -17,6 +17,7 @@
 package com.haulmont.cuba.cli.cubaplugin.appcomponentxml
 
 import com.beust.jcommander.Parameters
+import com.haulmont.cuba.cli.PrintHelper
 import com.haulmont.cuba.cli.Resources
 import com.haulmont.cuba.cli.commands.GeneratorCommand
 import com.haulmont.cuba.cli.commands.NonInteractiveInfo
@@ -35,6 +36,8 @@ class AppComponentCommand : GeneratorCommand<AppComponentModel>(), NonInteractiv
 
     private val prefixChanger: PrefixChanger by cubaKodein.instance()
 
+    private val printHelper: PrintHelper by cubaKodein.instance()
+
     private val resources by Resources.fromMyPlugin()
 
     private val snippets: Snippets by lazy {
@@ -111,6 +114,7 @@ class AppComponentCommand : GeneratorCommand<AppComponentModel>(), NonInteractiv
             ).let {
                 buildGradle.writeText(it)
             }
+            printHelper.fileWritten(projectStructure.buildGradle)
         }
     }
 }
@@ -133,7 +133,7 @@ class UberJarCommand : GeneratorCommand<UberJarModel>() {
 
             projectStructure.buildGradle.let {
                 it.appendText(transformToText("uberJarTask"))
-                printHelper.fileModified(it)
+                printHelper.fileWritten(it)
             }
         }
     }
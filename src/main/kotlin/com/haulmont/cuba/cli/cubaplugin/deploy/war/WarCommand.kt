@@ -127,7 +127,7 @@ class WarCommand : GeneratorCommand<WarModel>() {
 
             projectStructure.buildGradle.let {
                 it.appendText(transformToText("warTask"))
-                printHelper.fileModified(it)
+                printHelper.fileWritten(it)
             }
         }
     }
@@ -27,6 +27,7 @@ import com.haulmont.cuba.cli.registration.ScreenRegistrationHelper
 import com.haulmont.cuba.cli.registration.ServiceRegistrationHelper
 import org.kodein.di.Kodein
 import org.kodein.di.generic.bind
+import org.kodein.di.generic.provider
 import org.kodein.di.generic.singleton
 
 private val cubaModule = Kodein.Module {
@@ -50,7 +51,7 @@ private val cubaModule = Kodein.Module {
         EntitySearch()
     }
 
-    bind<GradleRunner>() with singleton {
+    bind<GradleRunner>() with provider {
         GradleRunner()
     }
 
@@ -118,11 +118,9 @@ class CreateEntityCommand(override val kodein: Kodein = cubaKodein) : GeneratorC
         listOf(metadataXml, persistenceXml).forEach {
             val entityFullName = model.packageName + "." + model.name
 
-            parse(it).documentElement
-                    .xpath("//class[text()=\"$entityFullName\"]")
-                    .firstOrNull()?.let {
-                        fail("Entity $entityFullName already exists")
-                    }
+            if (hasXmlElement(it, "class", text = entityFullName)) {
+                fail("Entity $entityFullName already exists")
+            }
         }
     }
 
@@ -155,10 +153,10 @@ class CreateEntityCommand(override val kodein: Kodein = cubaKodein) : GeneratorC
             Files.createFile(createDbPath)
 
             createDbPath.toFile().appendText(script)
-            printHelper.fileCreated(createDbPath)
+            printHelper.fileWritten(createDbPath, created = true)
         } else {
             createDbPath.toFile().appendText(script)
-            printHelper.fileModified(createDbPath)
+            printHelper.fileWritten(createDbPath)
         }
 
 
@@ -177,7 +175,7 @@ class CreateEntityCommand(override val kodein: Kodein = cubaKodein) : GeneratorC
 
         val updateScriptPath = currentYearUpdateDir.resolve(scriptName)
         updateScriptPath.toFile().also { it.createNewFile() }.writeText(script)
-        printHelper.fileCreated(updateScriptPath)
+        printHelper.fileWritten(updateScriptPath, created = true)
     }
 
     private fun getYear() = (calendar[Calendar.YEAR] - 2000).toString()
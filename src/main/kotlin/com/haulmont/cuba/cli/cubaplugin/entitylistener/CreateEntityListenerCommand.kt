@@ -166,7 +166,7 @@ class CreateEntityListenerCommand(override val kodein: Kodein = cubaKodein) : Ge
             }
         }
 
-        printHelper.fileModified(entityPath)
+        printHelper.fileWritten(entityPath)
     }
 }
 
@@ -69,12 +69,11 @@ class CreatePolymerModuleCommand(override val kodein: Kodein = cubaKodein) : Gen
         val destinationDir = projectStructure.path.resolve("modules/front")
 
         val maybeHints = TemplateProcessor(resources.getTemplate("polymer"), bindings) {
-            templatePath.walk(1).filter {
-                it.fileName.toString() != "images" && it != templatePath
-            }.forEach {
-                transform(it, to = destinationDir)
+            val imagesPath = templatePath.resolve("images")
+            transform("", to = destinationDir, parallel = true) {
+                !it.startsWith(imagesPath)
             }
-            copy("images", to = destinationDir)
+            copy("images", to = destinationDir, parallel = true)
         }
 
         projectStructure.buildGradle.toFile().apply {
@@ -86,7 +85,7 @@ class CreatePolymerModuleCommand(override val kodein: Kodein = cubaKodein) : Gen
                         writeText(it)
                     }
         }
-        printHelper.fileModified(projectStructure.buildGradle)
+        printHelper.fileWritten(projectStructure.buildGradle)
 
 
         projectStructure.settingsGradle.toFile().apply {
@@ -100,7 +99,7 @@ class CreatePolymerModuleCommand(override val kodein: Kodein = cubaKodein) : Gen
             } + snippets["moduleRegistration"]
             writeText(lines.joinToString("\n"))
         }
-        printHelper.fileModified(projectStructure.settingsGradle)
+        printHelper.fileWritten(projectStructure.settingsGradle)
 
         maybeHints?.let { writer.println(it) }
     }
@@ -28,12 +28,10 @@ import com.haulmont.cuba.cli.generation.Snippets
 import com.haulmont.cuba.cli.generation.TemplateProcessor
 import com.haulmont.cuba.cli.prompting.Answers
 import com.haulmont.cuba.cli.prompting.QuestionsList
-import com.haulmont.cuba.cli.walk
 import org.kodein.di.Kodein
 import org.kodein.di.generic.instance
 import java.io.PrintWriter
 import java.nio.file.Files
-import java.nio.file.Files.isRegularFile
 
 @Parameters(commandDescription = "Creates React module")
 class CreateReactModuleCommand(override val kodein: Kodein = cubaKodein) : GeneratorCommand<ReactModuleModel>() {
@@ -66,14 +64,11 @@ class CreateReactModuleCommand(override val kodein: Kodein = cubaKodein) : Gener
         val destinationDir = projectStructure.path.resolve("modules/front")
 
         val maybeHints = TemplateProcessor(resources.getTemplate("react"), bindings) {
-            templatePath.walk().filter {
-                it != templatePath && isRegularFile(it)
-            }.forEach {
-                if (it.fileName.toString().endsWith(".png")) {
-                    copy(it, to = destinationDir)
-                } else {
-                    transform(it, to = destinationDir)
-                }
+            transform("", to = destinationDir, parallel = true) {
+                !it.fileName.toString().endsWith(".png")
+            }
+            copy("", to = destinationDir, parallel = true) {
+                it.fileName.toString().endsWith(".png")
             }
         }
 
@@ -86,7 +81,7 @@ class CreateReactModuleCommand(override val kodein: Kodein = cubaKodein) : Gener
                         writeText(it)
                     }
         }
-        printHelper.fileModified(projectStructure.buildGradle)
+        printHelper.fileWritten(projectStructure.buildGradle)
 
 
         projectStructure.settingsGradle.toFile().apply {
@@ -100,7 +95,7 @@ class CreateReactModuleCommand(override val kodein: Kodein = cubaKodein) : Gener
             } + snippets["moduleRegistration"]
             writeText(lines.joinToString("\n"))
         }
-        printHelper.fileModified(projectStructure.settingsGradle)
+        printHelper.fileWritten(projectStructure.settingsGradle)
 
         maybeHints?.let { writer.println(it) }
     }
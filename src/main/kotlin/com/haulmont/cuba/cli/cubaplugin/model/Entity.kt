@@ -16,15 +16,16 @@
 
 package com.haulmont.cuba.cli.cubaplugin.model
 
-class Entity(val fqn: String, code: String) {
-    val name = Regex("@Entity\\((name *=)? *\"([^\n]*)\".*\\)")
-            .find(code)?.groupValues?.get(2) ?: fqn.substringAfterLast(".")
+class Entity(val fqn: String, val name: String, val embeddable: Boolean) {
 
-    val embeddable = code.contains("@Embeddable")
+    constructor(fqn: String, header: EntitySourceHeader) :
+            this(fqn, header.entityName ?: fqn.substringAfterLast("."), header.embeddable)
+
+    constructor(fqn: String, code: String) : this(fqn, EntitySourceScanner.scan(code))
 
     val packageName: String = fqn.split('.').let {
         it.take(it.size - 1).joinToString(".")
     }
 
     val className: String = fqn.split('.').last()
-}
\ No newline at end of file
+}
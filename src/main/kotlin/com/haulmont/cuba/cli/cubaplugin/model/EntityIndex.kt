@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.google.common.hash.Hashing
+import com.google.gson.Gson
+import com.haulmont.cuba.cli.CLI_VERSION
+import com.haulmont.cuba.cli.thisClassLogger
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.logging.Level
+import java.util.stream.Collectors
+
+/**
+ * On-disk index of project entities.
+ *
+ * For every entity class it stores entity name, embeddable flag, source file path and its size and modification time.
+ * Only sources, that were changed since the previous scan, are scanned again. Scanning of many sources,
+ * e.g. on the first launch, is spread across the common fork-join pool.
+ *
+ * While project files are watched by [ProjectWatcher], sources are checked only once, and then only after
+ * the watcher reports their change.
+ *
+ * Index is persisted as json file in [indexDirectory].
+ */
+class EntityIndex(val projectRoot: Path, private val indexDirectory: Path = DEFAULT_INDEX_DIRECTORY) {
+
+    private val logger by thisClassLogger()
+
+    private val gson = Gson()
+
+    private val indexFile: Path = indexDirectory.resolve(
+            Hashing.murmur3_128().hashString(projectRoot.toString(), StandardCharsets.UTF_8).toString() + ".json")
+
+    private val records: MutableMap<String, EntityRecord> by lazy { load() }
+
+    private var watchedFiles: ((Path) -> Boolean)? = null
+
+    /**
+     * Classes, which sources were checked after the watching was started, and weren't reported as changed since.
+     */
+    private val verified: MutableSet<String> = HashSet()
+
+    /**
+     * Returns entities for [entityClasses] in the same order. Classes, whose sources are not found by [locateSource], are skipped.
+     * Records of other classes are kept.
+     */
+    fun getEntities(entityClasses: List<String>, locateSource: (String) -> Path?): List<Entity> =
+            getEntities(entityClasses, false, locateSource)
+
+    /**
+     * Returns entities for all project [entityClasses], e.g. listed in persistence.xml, and removes records of other classes.
+     */
+    fun getAllEntities(entityClasses: List<String>, locateSource: (String) -> Path?): List<Entity> =
+            getEntities(entityClasses, true, locateSource)
+
+    @Synchronized
+    private fun getEntities(entityClasses: List<String>, prune: Boolean, locateSource: (String) -> Path?): List<Entity> {
+        val outdated = entityClasses.filter { fqn -> !isVerified(fqn) }
+
+        if (outdated.isNotEmpty()) {
+            val scanned = outdated.parallelStream()
+                    .map { fqn -> scan(fqn, locateSource) }
+                    .collect(Collectors.toList())
+
+            outdated.forEach { records.remove(it) }
+            scanned.filterNotNull().forEach {
+                records[it.fqn] = it
+                markVerified(it)
+            }
+        }
+
+        val removed = prune && records.keys.retainAll(entityClasses)
+        verified.retainAll(records.keys)
+
+        if (outdated.isNotEmpty() || removed) {
+            save()
+        }
+
+        return entityClasses.mapNotNull { records[it]?.toEntity() }
+    }
+
+    /**
+     * Starts trusting records of [watchedFiles] sources after their first check, or stops, if [watchedFiles] is null.
+     * Also called, when watch events were lost, so all sources are checked again.
+     */
+    @Synchronized
+    internal fun watch(watchedFiles: ((Path) -> Boolean)?) {
+        this.watchedFiles = watchedFiles
+        verified.clear()
+    }
+
+    /**
+     * Makes records of changed, created or deleted source [files] be checked on next access.
+     */
+    @Synchronized
+    internal fun filesChanged(files: Set<Path>) {
+        verified.removeAll { fqn ->
+            records[fqn]?.let { Paths.get(it.path).normalize() in files } ?: true
+        }
+    }
+
+    private fun isVerified(fqn: String): Boolean {
+        if (fqn in verified)
+            return true
+
+        val record = records[fqn] ?: return false
+        if (!record.isUpToDate())
+            return false
+
+        markVerified(record)
+        return true
+    }
+
+    private fun markVerified(record: EntityRecord) {
+        if (watchedFiles?.invoke(Paths.get(record.path).normalize()) == true) {
+            verified += record.fqn
+        }
+    }
+
+    private fun scan(fqn: String, locateSource: (String) -> Path?): EntityRecord? {
+        val source = locateSource(fqn) ?: return null
+
+        return try {
+            val attributes = Files.readAttributes(source, BasicFileAttributes::class.java)
+            val entity = Entity(fqn, EntitySourceScanner.scan(source))
+
+            EntityRecord(
+                    fqn,
+                    entity.name,
+                    entity.embeddable,
+                    source.toAbsolutePath().toString(),
+                    attributes.size(),
+                    attributes.lastModifiedTime().toMillis())
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to scan entity $fqn source $source", e)
+            null
+        }
+    }
+
+    private fun load(): MutableMap<String, EntityRecord> {
+        val result: MutableMap<String, EntityRecord> = mutableMapOf()
+
+        if (!Files.exists(indexFile))
+            return result
+
+        try {
+            val stored = Files.newBufferedReader(indexFile).use {
+                gson.fromJson(it, IndexFile::class.java)
+            }
+            if (stored != null && stored.cliVersion == CLI_VERSION && stored.projectRoot == projectRoot.toString()) {
+                stored.entities.forEach { result[it.fqn] = it }
+            }
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Unable to read entity index $indexFile", e)
+        }
+
+        return result
+    }
+
+    private fun save() {
+        try {
+            Files.createDirectories(indexDirectory)
+            val tmpFile = Files.createTempFile(indexDirectory, indexFile.fileName.toString(), ".tmp")
+            Files.newBufferedWriter(tmpFile).use {
+                gson.toJson(IndexFile(CLI_VERSION, projectRoot.toString(), records.values.toList()), it)
+            }
+            Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to save entity index $indexFile", e)
+        }
+    }
+
+    private class IndexFile(
+            val cliVersion: String = "",
+            val projectRoot: String = "",
+            val entities: List<EntityRecord> = listOf()
+    )
+
+    private class EntityRecord(
+            val fqn: String = "",
+            val name: String = "",
+            val embeddable: Boolean = false,
+            val path: String = "",
+            val size: Long = 0,
+            val modified: Long = 0
+    ) {
+        fun isUpToDate(): Boolean = try {
+            val attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes::class.java)
+            attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified
+        } catch (e: IOException) {
+            false
+        }
+
+        fun toEntity(): Entity = Entity(fqn, name, embeddable)
+    }
+
+    companion object {
+        val DEFAULT_INDEX_DIRECTORY: Path = ProjectModelCache.CACHE_ROOT.resolve("entities")
+    }
+}
@@ -19,39 +19,70 @@ package com.haulmont.cuba.cli.cubaplugin.model
 import com.haulmont.cuba.cli.cubaplugin.NamesUtils
 import com.haulmont.cuba.cli.generation.getChildElements
 import com.haulmont.cuba.cli.generation.parse
-import com.haulmont.cuba.cli.readText
 import net.sf.practicalxml.DomUtil
 import org.kodein.di.Kodein
 import org.kodein.di.generic.instance
 import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
 
 class EntitySearch(val kodein: Kodein = com.haulmont.cuba.cli.kodein) {
     private val namesUtils: NamesUtils by kodein.instance()
 
-    fun getAllEntities(): List<Entity> {
-        val globalModule = ProjectStructure().getModule(ModuleStructure.GLOBAL_MODULE)
+    private val indexes: MutableMap<Path, EntityIndex> = ConcurrentHashMap()
 
-        val persistenceXml = globalModule.persistenceXml
+    /**
+     * Returns all entities registered in persistence.xml.
+     * Entities are served from the [EntityIndex], so only changed entity sources are read.
+     */
+    fun getAllEntities(): List<Entity> {
+        val projectStructure = ProjectStructure()
+        val globalModule = projectStructure.getModule(ModuleStructure.GLOBAL_MODULE)
 
-        val entityClasses = parse(persistenceXml).documentElement
-                .let { DomUtil.getChild(it, "persistence-unit") }
-                .getChildElements()
-                .filter { element -> element.tagName == "class" }
-                .map { it.textContent.trim() }
+        val entityClasses = projectStructure.cache
+                .get("persistenceXmlClasses", { globalModule.persistenceXml }, ::parseEntityClasses)
+                .classes
+        projectStructure.cache.flush()
 
-        return entityClasses.mapNotNull(::findEntity)
+        return getIndex(projectStructure.path).getAllEntities(entityClasses) { fqn ->
+            findSource(globalModule, fqn)
+        }
     }
 
     fun findEntity(fqn: String): Entity? {
-        val globalModule = ProjectStructure().getModule(ModuleStructure.GLOBAL_MODULE)
+        val projectStructure = ProjectStructure()
+        val globalModule = projectStructure.getModule(ModuleStructure.GLOBAL_MODULE)
+
+        return getIndex(projectStructure.path).getEntities(listOf(fqn)) {
+            findSource(globalModule, it)
+        }.firstOrNull()
+    }
+
+    internal fun getIndex(projectRoot: Path): EntityIndex =
+            indexes.computeIfAbsent(projectRoot.toAbsolutePath().normalize()) { EntityIndex(it) }
 
+    /**
+     * Makes records of changed source [files] be checked on next access in all loaded entity indexes.
+     */
+    internal fun filesChanged(files: Set<Path>) {
+        indexes.values.forEach { it.filesChanged(files) }
+    }
+
+    private fun findSource(globalModule: ModuleStructure, fqn: String): Path? {
         val directoriesSubPath = namesUtils.packageToDirectory(fqn)
-        val code = listOf("java", "groovy", "kt").map { "$directoriesSubPath.$it" }.map { relativePath ->
+        return listOf("java", "groovy", "kt").map { "$directoriesSubPath.$it" }.map { relativePath ->
             globalModule.src.resolve(relativePath)
         }.firstOrNull {
             Files.exists(it)
-        }?.readText() ?: return null
-
-        return Entity(fqn, code)
+        }
     }
-}
\ No newline at end of file
+}
+
+private class EntityClassesInfo(val classes: List<String> = emptyList())
+
+private fun parseEntityClasses(persistenceXml: Path): EntityClassesInfo = parse(persistenceXml).documentElement
+        .let { DomUtil.getChild(it, "persistence-unit") }
+        .getChildElements()
+        .filter { element -> element.tagName == "class" }
+        .map { it.textContent.trim() }
+        .let(::EntityClassesInfo)
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import java.io.InputStreamReader
+import java.io.Reader
+import java.io.StringReader
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Entity info, declared before the class body.
+ */
+class EntitySourceHeader(
+        val packageName: String?,
+        val imports: List<String>,
+        val entityName: String?,
+        val embeddable: Boolean
+)
+
+/**
+ * Reads java, groovy or kotlin source up to the first class declaration and collects package name, imports
+ * and entity annotations values. The rest of the source is never read.
+ *
+ * Source is read through a fixed size buffer by a small tokenizer, that skips comments and understands string literals,
+ * so memory consumption doesn't depend on the source size.
+ */
+class EntitySourceScanner private constructor(private val reader: Reader) {
+
+    private val buffer = CharArray(BUFFER_SIZE)
+
+    private var position = 0
+
+    private var limit = 0
+
+    private var peeked: Token? = null
+
+    private fun scan(): EntitySourceHeader {
+        var packageName: String? = null
+        val imports = mutableListOf<String>()
+        var entityName: String? = null
+        var embeddable = false
+
+        loop@ while (true) {
+            val token = nextToken()
+            when {
+                token.type == TokenType.EOF -> break@loop
+                token.isIdentifier("package") -> packageName = readQualifiedName()
+                token.isIdentifier("import") -> readImport()?.let { imports += it }
+                token.isSymbol('@') -> {
+                    if (peekToken().isIdentifier("interface"))
+                        break@loop
+
+                    val annotation = readQualifiedName()?.substringAfterLast('.')
+                    val value = if (peekToken().isSymbol('(')) readAnnotationName() else null
+
+                    when (annotation) {
+                        "Entity" -> entityName = value
+                        "Embeddable" -> embeddable = true
+                    }
+                }
+                token.type == TokenType.IDENTIFIER && token.value in CLASS_KEYWORDS -> break@loop
+            }
+        }
+
+        return EntitySourceHeader(packageName, imports, entityName, embeddable)
+    }
+
+    private fun readQualifiedName(): String? {
+        if (peekToken().type != TokenType.IDENTIFIER)
+            return null
+
+        return buildString {
+            append(nextToken().value)
+            while (peekToken().isSymbol('.')) {
+                nextToken()
+                val part = peekToken()
+                when {
+                    part.type == TokenType.IDENTIFIER -> append('.').append(nextToken().value)
+                    part.isSymbol('*') -> {
+                        nextToken()
+                        append(".*")
+                        return@buildString
+                    }
+                    else -> return@buildString
+                }
+            }
+        }
+    }
+
+    private fun readImport(): String? {
+        if (peekToken().isIdentifier("static")) {
+            nextToken()
+        }
+        val name = readQualifiedName()
+        if (peekToken().isIdentifier("as")) {
+            nextToken()
+            nextToken()
+        }
+        return name
+    }
+
+    /**
+     * Reads annotation arguments and returns either the value of `name` argument,
+     * or the value of the single unnamed argument, if it is a string literal.
+     */
+    private fun readAnnotationName(): String? {
+        nextToken() // (
+
+        var depth = 1
+        var result: String? = null
+        var isFirstArgument = true
+        var previous: Token? = null
+        var argumentName: String? = null
+
+        while (depth > 0) {
+            val token = nextToken()
+            when {
+                token.type == TokenType.EOF -> return result
+                token.isSymbol('(') -> depth++
+                token.isSymbol(')') -> depth--
+                token.isSymbol(',') && depth == 1 -> isFirstArgument = false
+                token.type == TokenType.STRING && depth == 1 && result == null -> {
+                    if (previous != null && previous.isSymbol('=')) {
+                        if (argumentName == "name") result = token.value
+                    } else if (isFirstArgument && previous != null && previous.isSymbol('(')) {
+                        result = token.value
+                    }
+                }
+                token.type == TokenType.IDENTIFIER && peekToken().isSymbol('=') -> argumentName = token.value
+            }
+            previous = token
+        }
+        return result
+    }
+
+    private fun peekToken(): Token {
+        val token = peeked ?: readToken()
+        peeked = token
+        return token
+    }
+
+    private fun nextToken(): Token {
+        val token = peeked ?: readToken()
+        peeked = null
+        return token
+    }
+
+    private fun readToken(): Token {
+        while (true) {
+            val c = peekChar(0)
+            when {
+                c == EOF -> return Token(TokenType.EOF, "")
+                Character.isWhitespace(c) -> position++
+                c == '/' && peekChar(1) == '/' -> skipLine()
+                c == '/' && peekChar(1) == '*' -> skipBlockComment()
+                c == '"' -> return readString()
+                c == '\'' -> return readCharLiteral()
+                Character.isJavaIdentifierStart(c) -> return readIdentifier()
+                else -> {
+                    position++
+                    return Token(TokenType.SYMBOL, c.toString())
+                }
+            }
+        }
+    }
+
+    private fun readIdentifier(): Token {
+        val value = StringBuilder()
+        while (true) {
+            val c = peekChar(0)
+            if (c == EOF || !Character.isJavaIdentifierPart(c))
+                break
+            position++
+            if (value.length < MAX_TOKEN_LENGTH) value.append(c)
+        }
+        return Token(TokenType.IDENTIFIER, value.toString())
+    }
+
+    private fun readString(): Token {
+        val tripleQuoted = peekChar(1) == '"' && peekChar(2) == '"'
+        position += if (tripleQuoted) 3 else 1
+
+        val value = StringBuilder()
+        while (true) {
+            val c = peekChar(0)
+            when {
+                c == EOF -> return Token(TokenType.STRING, value.toString())
+                tripleQuoted && c == '"' && peekChar(1) == '"' && peekChar(2) == '"' -> {
+                    position += 3
+                    return Token(TokenType.STRING, value.toString())
+                }
+                !tripleQuoted && c == '"' -> {
+                    position++
+                    return Token(TokenType.STRING, value.toString())
+                }
+                !tripleQuoted && c == '\n' -> return Token(TokenType.STRING, value.toString())
+                c == '\\' && !tripleQuoted -> {
+                    position++
+                    val escaped = peekChar(0)
+                    if (escaped != EOF) {
+                        position++
+                        if (value.length < MAX_TOKEN_LENGTH) value.append(escaped)
+                    }
+                }
+                else -> {
+                    position++
+                    if (value.length < MAX_TOKEN_LENGTH) value.append(c)
+                }
+            }
+        }
+    }
+
+    private fun readCharLiteral(): Token {
+        position++
+        while (true) {
+            val c = peekChar(0)
+            when (c) {
+                EOF, '\n' -> return Token(TokenType.STRING, "")
+                '\\' -> position += 2
+                '\'' -> {
+                    position++
+                    return Token(TokenType.STRING, "")
+                }
+                else -> position++
+            }
+        }
+    }
+
+    private fun skipLine() {
+        while (true) {
+            val c = peekChar(0)
+            if (c == EOF) return
+            position++
+            if (c == '\n') return
+        }
+    }
+
+    private fun skipBlockComment() {
+        position += 2
+        while (true) {
+            val c = peekChar(0)
+            if (c == EOF) return
+            if (c == '*' && peekChar(1) == '/') {
+                position += 2
+                return
+            }
+            position++
+        }
+    }
+
+    /**
+     * Returns char at [offset] from current position without consuming it, or [EOF].
+     */
+    private fun peekChar(offset: Int): Char {
+        if (position + offset >= limit) {
+            fill()
+            if (position + offset >= limit)
+                return EOF
+        }
+        return buffer[position + offset]
+    }
+
+    private fun fill() {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position)
+            limit -= position
+            position = 0
+        }
+        while (limit < buffer.size) {
+            val read = reader.read(buffer, limit, buffer.size - limit)
+            if (read < 0) return
+            limit += read
+            if (read == 0) return
+        }
+    }
+
+    private enum class TokenType { IDENTIFIER, STRING, SYMBOL, EOF }
+
+    private class Token(val type: TokenType, val value: String) {
+        fun isIdentifier(name: String) = type == TokenType.IDENTIFIER && value == name
+
+        fun isSymbol(symbol: Char) = type == TokenType.SYMBOL && value.length == 1 && value[0] == symbol
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 4096
+
+        private const val MAX_TOKEN_LENGTH = 1024
+
+        private const val EOF = '\uFFFF'
+
+        private val CLASS_KEYWORDS = setOf("class", "interface", "enum", "object", "trait")
+
+        fun scan(reader: Reader): EntitySourceHeader = reader.use {
+            EntitySourceScanner(it).scan()
+        }
+
+        fun scan(code: String): EntitySourceHeader = scan(StringReader(code))
+
+        fun scan(source: Path): EntitySourceHeader =
+                scan(InputStreamReader(Files.newInputStream(source), StandardCharsets.UTF_8))
+    }
+}
@@ -20,9 +20,7 @@ import com.haulmont.cuba.cli.CliContext
 import com.haulmont.cuba.cli.kodein
 import org.kodein.di.direct
 import org.kodein.di.generic.instance
-import java.nio.file.Files
 import java.nio.file.Path
-import java.util.stream.Collectors
 
 /**
  * Represents CUBA Platform version.
@@ -70,27 +68,8 @@ sealed class PlatformVersion : Comparable<PlatformVersion> {
         return this > PlatformVersion(versionStr)
     }
 
-    fun findMostSuitableVersionDirectory(baseDirectory: Path): Path {
-        val directoriesByVersions = Files.walk(baseDirectory, 1)
-                .filter { Files.isDirectory(it) && it != baseDirectory }
-                .collect(Collectors.toList())
-                .associateBy {
-                    try {
-                        PlatformVersion(it.fileName.toString())
-                    } catch (e: Exception) {
-//                        found directory that doesn't conform any version naming rules
-                        return baseDirectory
-                    }
-                }.toSortedMap()
-
-        if (directoriesByVersions.isEmpty())
-            return baseDirectory
-
-        return directoriesByVersions.entries
-                .lastOrNull { (version, _) -> version <= this }
-                ?.value
-                ?: directoriesByVersions.getValue(directoriesByVersions.firstKey())
-    }
+    fun findMostSuitableVersionDirectory(baseDirectory: Path): Path =
+            VersionDirectoryCatalog.of(baseDirectory).find(this)
 
     companion object {
         private val specificVersionRegex = "([0-9]+\\.)*([0-9]+)(\\.[0-9\\w-]+)?".toRegex()
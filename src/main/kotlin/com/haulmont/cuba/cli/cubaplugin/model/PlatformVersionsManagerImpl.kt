@@ -16,57 +16,144 @@
 
 package com.haulmont.cuba.cli.cubaplugin.model
 
+import com.google.common.hash.Hashing
 import com.google.gson.Gson
 import com.haulmont.cuba.cli.commands.LaunchOptions
 import com.haulmont.cuba.cli.localMessages
 import com.haulmont.cuba.cli.thisClassLogger
+import java.io.IOException
+import java.net.HttpURLConnection
 import java.net.URL
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
 import java.util.logging.Level
 import kotlin.concurrent.thread
 
-class PlatformVersionsManagerImpl : PlatformVersionsManager {
+/**
+ * Provides platform versions from studio-config.json.
+ *
+ * Filtered versions are persisted in [cacheDirectory] along with the fetch time and ETag of the config,
+ * so they are available instantly on startup. The config is refreshed in background with a conditional request,
+ * only if the cached versions are older than [ttlMillis]. Until refresh is completed, stale versions are used.
+ */
+class PlatformVersionsManagerImpl(
+        private val cacheDirectory: Path = ProjectModelCache.CACHE_ROOT.resolve("versions"),
+        private val ttlMillis: Long = DEFAULT_TTL_MS,
+        private val versionsConfigUrl: () -> String = { LaunchOptions.versionsConfigUrl }
+) : PlatformVersionsManager {
     private val messages by localMessages()
 
     private val logger by thisClassLogger()
 
+    private val gson = Gson()
+
     override val supportedVersionsRange = SpecificVersion(6, 8, 0)..SpecificVersion(7, 3, 0)
 
+    @Volatile
     override var versions: List<String> = messages["platformVersions"].split(",").map { it.trim() }
         private set
 
-    val loadThread: Thread by lazy {
-        thread(isDaemon = true) {
-            if (!LaunchOptions.skipVersionLoading) {
-                try {
-                    versions = loadInfoJson()
-                            .let(::extractVersions)
-                            .let(::filterVersions)
-                            .distinct()
-                } catch (e: Throwable) {
-                    logger.log(Level.SEVERE, "Error during platform versions retrieving", e)
+    /**
+     * Background refresh of the versions config, if the cache is missing or expired.
+     */
+    @Volatile
+    var refreshThread: Thread? = null
+        private set
+
+    private val loaded: Unit by lazy {
+        if (!LaunchOptions.skipVersionLoading) {
+            val url = versionsConfigUrl()
+            val cached = readCache(url)
+
+            if (cached != null) {
+                versions = cached.versions
+            }
+
+            if (cached == null || System.currentTimeMillis() - cached.fetchedAt >= ttlMillis) {
+                refreshThread = thread(isDaemon = true, name = "platform-versions-refresh") {
+                    try {
+                        refresh(url, cached)
+                    } catch (e: Throwable) {
+                        logger.log(Level.SEVERE, "Error during platform versions retrieving", e)
+                    }
                 }
             }
         }
     }
 
     override fun load() {
-        loadThread // force field initialization
+        loaded // force field initialization
     }
 
-    private fun extractVersions(infoJson: String) = Gson()
+    private fun refresh(url: String, cached: CachedVersions?) {
+        val connection = URL(url).openConnection().apply {
+            connectTimeout = TIMEOUT_MS
+            readTimeout = TIMEOUT_MS
+        }
+
+        if (connection is HttpURLConnection && cached?.etag != null) {
+            connection.setRequestProperty("If-None-Match", cached.etag)
+        }
+
+        if (connection is HttpURLConnection && connection.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.disconnect()
+            writeCache(cached!!.copy(fetchedAt = System.currentTimeMillis()))
+            return
+        }
+
+        val infoJson = connection.getInputStream().use {
+            it.bufferedReader().readText()
+        }
+
+        val loadedVersions = infoJson
+                .let(::extractVersions)
+                .let(::filterVersions)
+                .distinct()
+
+        versions = loadedVersions
+        writeCache(CachedVersions(url, System.currentTimeMillis(), connection.getHeaderField("ETag"), loadedVersions))
+    }
+
+    private fun extractVersions(infoJson: String) = gson
             .fromJson(infoJson, StudioConfig::class.java)
             .platform_versions
 
-    private fun loadInfoJson(): String = URL(LaunchOptions.versionsConfigUrl)
-            .openConnection()
-            .apply {
-                connectTimeout = TIMEOUT_MS
-                readTimeout = TIMEOUT_MS
-            }
-            .getInputStream()
-            .use {
-                it.bufferedReader().readText()
+    private fun cacheFile(url: String): Path = cacheDirectory.resolve(
+            Hashing.murmur3_128().hashString(url, StandardCharsets.UTF_8).toString() + ".json")
+
+    private fun readCache(url: String): CachedVersions? {
+        val cacheFile = cacheFile(url)
+        if (!Files.exists(cacheFile))
+            return null
+
+        return try {
+            Files.newBufferedReader(cacheFile).use {
+                gson.fromJson(it, CachedVersions::class.java)
+            }?.takeIf { it.url == url && it.versions.isNotEmpty() }
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Unable to read platform versions cache $cacheFile", e)
+            null
+        }
+    }
+
+    /**
+     * Failures are only logged, as the versions will be loaded again on the next start.
+     */
+    private fun writeCache(cachedVersions: CachedVersions) {
+        val cacheFile = cacheFile(cachedVersions.url)
+        try {
+            Files.createDirectories(cacheDirectory)
+            val tmpFile = Files.createTempFile(cacheDirectory, cacheFile.fileName.toString(), ".tmp")
+            Files.newBufferedWriter(tmpFile).use {
+                gson.toJson(cachedVersions, it)
             }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to save platform versions cache $cacheFile", e)
+        }
+    }
 
     private fun filterVersions(fullList: List<String>): List<String> {
         val borders = listOf<PlatformVersion>(
@@ -95,7 +182,16 @@ class PlatformVersionsManagerImpl : PlatformVersionsManager {
 
     data class StudioConfig(val platform_versions: List<String> = emptyList())
 
+    data class CachedVersions(
+            val url: String = "",
+            val fetchedAt: Long = 0,
+            val etag: String? = null,
+            val versions: List<String> = emptyList()
+    )
+
     companion object {
         private const val TIMEOUT_MS = 60_000
+
+        private const val DEFAULT_TTL_MS = 12 * 60 * 60 * 1000L
     }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import java.io.IOException
+import java.nio.file.*
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.stream.Collectors
+
+/**
+ * Index of project sources, that is built by a single walk of every module src directory.
+ * Modules are walked in parallel on the first access.
+ *
+ * Index maps well-known descriptor names (see [DESCRIPTOR_NAMES]) and package directories to their paths.
+ * Directories from [SKIPPED_DIRECTORIES] are not walked, if they are directly under the src directory.
+ *
+ * Index may become stale, if files are created or deleted after it was built, so indexed paths are checked for existence,
+ * and callers should fall back to a direct file search if the index doesn't know the file.
+ * Files created by the CLI itself, or reported by [ProjectWatcher], are added to the built index by [fileCreated].
+ */
+class ProjectFileIndex(val projectRoot: Path) {
+
+    private val modulesLazy = lazy { buildModuleIndexes() }
+
+    private val modules: Map<String, ModuleFileIndex> by modulesLazy
+
+    /**
+     * Returns first found file with [fileName] in the module [moduleName] sources,
+     * or null, if there is no such file, or the file name is not a well-known descriptor name.
+     */
+    fun findFile(moduleName: String, fileName: String): Path? =
+            modules[moduleName]?.findFile(fileName)
+
+    /**
+     * Returns all indexed files with [fileName] in the module [moduleName] sources.
+     */
+    fun findFiles(moduleName: String, fileName: String): List<Path> =
+            modules[moduleName]?.findFiles(fileName) ?: emptyList()
+
+    /**
+     * Returns names of all packages of the module [moduleName].
+     */
+    fun getPackages(moduleName: String): Set<String> =
+            modules[moduleName]?.packages ?: emptySet()
+
+    /**
+     * Adds [file] and its package directories to the index, if the index is already built and the file belongs
+     * to a module sources. If [file] is a directory, it is added as a package directory.
+     */
+    fun fileCreated(file: Path) {
+        if (!modulesLazy.isInitialized())
+            return
+
+        val relative = projectRoot.relativize(file.toAbsolutePath().normalize())
+        if (relative.nameCount < 4 || relative.getName(0).toString() != "modules" || relative.getName(2).toString() != "src")
+            return
+
+        val src = projectRoot.resolve(relative.subpath(0, 3))
+        modules[relative.getName(1).toString()]?.add(src, file.toAbsolutePath().normalize())
+    }
+
+    private fun buildModuleIndexes(): Map<String, ModuleFileIndex> {
+        val modulesDirectory = projectRoot.resolve("modules")
+        if (!Files.isDirectory(modulesDirectory))
+            return emptyMap()
+
+        val moduleDirectories = Files.list(modulesDirectory).use { stream ->
+            stream.filter { Files.isDirectory(it.resolve("src")) }
+                    .collect(Collectors.toList())
+        }
+
+        return moduleDirectories.parallelStream()
+                .map { it.fileName.toString() to ModuleFileIndex.build(it.resolve("src")) }
+                .collect(Collectors.toList())
+                .toMap()
+    }
+
+    companion object {
+        val DESCRIPTOR_NAMES = setOf(
+                "metadata.xml",
+                "persistence.xml",
+                "spring.xml",
+                "web-spring.xml",
+                "screens.xml",
+                "web-screens.xml",
+                "web-menu.xml",
+                "views.xml",
+                "app-component.xml",
+                "app.properties",
+                "web-app.properties"
+        )
+
+        val SKIPPED_DIRECTORIES = setOf("build", "node_modules", ".gradle")
+
+        /**
+         * Returns true, if [directory] is one of [SKIPPED_DIRECTORIES] directly under [root].
+         * Deeper directories with the same names, e.g. `com.company.build` package, are not skipped.
+         */
+        fun isSkipped(root: Path, directory: Path): Boolean =
+                directory.parent == root && directory.fileName.toString() in SKIPPED_DIRECTORIES
+    }
+}
+
+internal class ModuleFileIndex private constructor(
+        private val files: MutableMap<String, MutableList<Path>>,
+        private val packageDirectories: MutableMap<String, Path>
+) {
+    val packages: Set<String>
+        get() = packageDirectories.keys
+
+    fun findFile(fileName: String): Path? = findFiles(fileName).firstOrNull()
+
+    fun findFiles(fileName: String): List<Path> =
+            files[fileName]?.filter { Files.exists(it) } ?: emptyList()
+
+    fun add(src: Path, file: Path) {
+        var directory = if (Files.isDirectory(file)) file else file.parent
+        while (directory != null && directory != src && directory.startsWith(src)) {
+            packageDirectories.putIfAbsent(src.relativize(directory).joinToString("."), directory)
+            directory = directory.parent
+        }
+
+        val fileName = file.fileName.toString()
+        if (fileName in ProjectFileIndex.DESCRIPTOR_NAMES) {
+            val paths = files.computeIfAbsent(fileName) { CopyOnWriteArrayList<Path>() }
+            if (file !in paths) {
+                paths.add(file)
+            }
+        }
+    }
+
+    companion object {
+        fun build(src: Path): ModuleFileIndex {
+            val files: MutableMap<String, MutableList<Path>> = ConcurrentHashMap()
+            val packageDirectories: MutableMap<String, Path> = ConcurrentHashMap()
+
+            Files.walkFileTree(src, object : SimpleFileVisitor<Path>() {
+                override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                    if (dir != src) {
+                        if (ProjectFileIndex.isSkipped(src, dir))
+                            return FileVisitResult.SKIP_SUBTREE
+
+                        packageDirectories[src.relativize(dir).joinToString(".")] = dir
+                    }
+                    return FileVisitResult.CONTINUE
+                }
+
+                override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                    val fileName = file.fileName.toString()
+                    if (attrs.isRegularFile && fileName in ProjectFileIndex.DESCRIPTOR_NAMES) {
+                        files.getOrPut(fileName) { CopyOnWriteArrayList<Path>() }.add(file)
+                    }
+                    return FileVisitResult.CONTINUE
+                }
+
+                override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult =
+                        FileVisitResult.CONTINUE
+            })
+
+            return ModuleFileIndex(files, packageDirectories)
+        }
+    }
+}
+
+/**
+ * Holds [ProjectFileIndex] instances, so all [ProjectStructure] consumers share the same index during a command.
+ * Indexes are dropped by [invalidate] after every command execution, unless they are [incremental],
+ * or their project is watched by [ProjectWatcher].
+ */
+class ProjectFileIndexManager {
+    private val indexes: MutableMap<Path, ProjectFileIndex> = ConcurrentHashMap()
+
+    private val watchedRoots: MutableSet<Path> = ConcurrentHashMap.newKeySet()
+
+    /**
+     * If true, indexes are kept between commands and updated by [fileCreated], e.g. while commands are executed
+     * in batch, and nothing but the CLI modifies the project.
+     */
+    @Volatile
+    var incremental: Boolean = false
+
+    fun getIndex(projectRoot: Path): ProjectFileIndex =
+            indexes.computeIfAbsent(projectRoot.toAbsolutePath().normalize(), ::ProjectFileIndex)
+
+    fun invalidate() {
+        indexes.keys.removeIf { it !in watchedRoots }
+    }
+
+    fun invalidate(projectRoot: Path) {
+        indexes.remove(projectRoot.toAbsolutePath().normalize())
+    }
+
+    fun fileCreated(file: Path) {
+        indexes.values.forEach { it.fileCreated(file) }
+    }
+
+    /**
+     * Keeps index of [projectRoot] between commands, while the project is watched, or drops it, if [watched] is false.
+     * Index, built before the watching was started, is dropped too, as it may miss changes.
+     */
+    internal fun watch(projectRoot: Path, watched: Boolean) {
+        val root = projectRoot.toAbsolutePath().normalize()
+        if (watched) watchedRoots.add(root) else watchedRoots.remove(root)
+        indexes.remove(root)
+    }
+
+    /**
+     * Updates index of [projectRoot] with changed, created or deleted [files]. Indexed paths are checked for existence,
+     * so only created files and directories are added. Index is dropped, if a module was created.
+     */
+    internal fun filesChanged(projectRoot: Path, files: Set<Path>) {
+        val root = projectRoot.toAbsolutePath().normalize()
+        val index = indexes[root] ?: return
+
+        if (files.any { isModuleSources(root.relativize(it)) && Files.isDirectory(it) }) {
+            indexes.remove(root)
+            return
+        }
+
+        files.filter { Files.exists(it) }.forEach { index.fileCreated(it) }
+    }
+
+    private fun isModuleSources(relative: Path): Boolean =
+            relative.getName(0).toString() == "modules"
+                    && (relative.nameCount == 1 || relative.nameCount == 3 && relative.getName(2).toString() == "src")
+}
@@ -20,10 +20,9 @@ import com.haulmont.cuba.cli.generation.get
 import com.haulmont.cuba.cli.generation.parse
 import com.haulmont.cuba.cli.generation.xpath
 import com.haulmont.cuba.cli.cubaplugin.model.ModuleStructure.Companion.CORE_MODULE
-import com.haulmont.cuba.cli.cubaplugin.model.ModuleStructure.Companion.GLOBAL_MODULE
 import com.haulmont.cuba.cli.generation.Properties
+import com.haulmont.cuba.cli.readText
 import com.haulmont.cuba.cli.resolve
-import net.sf.practicalxml.DomUtil
 import org.w3c.dom.Element
 import java.nio.file.Path
 
@@ -55,59 +54,42 @@ class ProjectModel(projectStructure: ProjectStructure) {
 
     init {
         try {
-            val global = projectStructure.getModule(GLOBAL_MODULE)
+            val cache = projectStructure.cache
 
             rootPackageDirectory = projectStructure.rootPackageDirectory
 
             rootPackage = projectStructure.rootPackage
 
-            name = projectStructure.settingsGradle.toFile().readText().let {
-                Regex("rootProject.name *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]").findAll(it).getGroupValue(1)
-                        ?: artifactParseError()
-            }
+            name = cache.get("settingsGradle", { projectStructure.settingsGradle }, ::parseProjectName)
 
-            namespace = parseNamespace(global.metadataXml)
+            namespace = projectStructure.metadata.namespace
 
-            val buildGradle = projectStructure.buildGradle.toFile().readText()
+            val buildGradle = cache.get("buildGradle", { projectStructure.buildGradle }, ::parseBuildGradle)
 
-            val groupRegex = Regex("group *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
-            group = groupRegex.findAll(buildGradle).getGroupValue(1) ?: artifactParseError()
+            group = buildGradle.group
 
-            val versionRegex = Regex("version *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
-            version = versionRegex.findAll(buildGradle).getGroupValue(1) ?: artifactParseError()
+            version = buildGradle.version
 
-            val copyrightRegex = Regex("copyright *= *'''(.*)'''")
-            copyright = copyrightRegex.findAll(buildGradle).getGroupValue(1)
+            copyright = buildGradle.copyright
 
-            val platformVersionRegex = Regex("ext\\.cubaVersion *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
-            val platformVersionString = platformVersionRegex.findAll(buildGradle).getGroupValue(1)
-                    ?: artifactParseError()
+            platformVersion = PlatformVersion(buildGradle.platformVersion)
 
-            platformVersion = PlatformVersion(platformVersionString)
+            modulePrefix = buildGradle.modulePrefix
 
-            val modulePrefixRegex = Regex("def *modulePrefix *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
-            modulePrefix = modulePrefixRegex.findAll(buildGradle).getGroupValue(1) ?: artifactParseError()
-
-            appComponents = parseAppComponents(projectStructure)
+            appComponents = cache.get("webXml", { getWebXml(projectStructure) }, ::parseAppComponents).appComponents
 
             appComponentsStr = appComponents.joinToString(separator = " ")
 
-            database = parseJndiDatabase(projectStructure) ?: parseApplicationDatabase(projectStructure)
+            database = cache.get("contextXml", { getContextXml(projectStructure) }, ::parseJndiDatabase).database
+                    ?: cache.get("appProperties", { getAppProperties(projectStructure) }, ::parseApplicationDatabase).database
                     ?: throw ProjectScanException("Unable to scan db properties")
+
+            cache.flush()
         } catch (e: ProjectFileNotFoundException) {
             throw ProjectScanException(e.message!!, e)
         }
     }
 
-    private fun parseAppComponents(projectStructure: ProjectStructure): List<String> {
-        val webXml = projectStructure.getModule(ModuleStructure.WEB_MODULE).path
-                .resolve("web", "WEB-INF", "web.xml")
-
-        return parse(webXml).documentElement
-                .xpath("//context-param[param-name[text()='appComponents']]/param-value")
-                .firstOrNull()?.textContent?.split(Regex(" +")) ?: emptyList()
-    }
-
     companion object {
         const val MODEL_NAME = "project"
 
@@ -117,24 +99,74 @@ class ProjectModel(projectStructure: ProjectStructure) {
     }
 }
 
-private fun parseNamespace(metadataXml: Path): String {
-    val document = parse(metadataXml)
-    return DomUtil.getChild(document.documentElement, "metadata-model")
-            ?.attributes
-            ?.getNamedItem("namespace")
-            ?.nodeValue ?: ""
+private fun parseProjectName(settingsGradle: Path): String = settingsGradle.readText().let {
+    Regex("rootProject.name *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]").findAll(it).getGroupValue(1)
+            ?: ProjectModel.artifactParseError()
+}
+
+/**
+ * Artifact info parsed from build.gradle.
+ */
+private class BuildGradleInfo(
+        val group: String = "",
+        val version: String = "",
+        val copyright: String? = null,
+        val platformVersion: String = "",
+        val modulePrefix: String = ""
+)
+
+private fun parseBuildGradle(buildGradlePath: Path): BuildGradleInfo {
+    val buildGradle = buildGradlePath.readText()
+
+    val groupRegex = Regex("group *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
+    val group = groupRegex.findAll(buildGradle).getGroupValue(1) ?: ProjectModel.artifactParseError()
+
+    val versionRegex = Regex("version *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
+    val version = versionRegex.findAll(buildGradle).getGroupValue(1) ?: ProjectModel.artifactParseError()
+
+    val copyrightRegex = Regex("copyright *= *'''(.*)'''")
+    val copyright = copyrightRegex.findAll(buildGradle).getGroupValue(1)
+
+    val platformVersionRegex = Regex("ext\\.cubaVersion *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
+    val platformVersion = platformVersionRegex.findAll(buildGradle).getGroupValue(1)
+            ?: ProjectModel.artifactParseError()
+
+    val modulePrefixRegex = Regex("def *modulePrefix *= *['\"]([a-zA-Z0-9_.\\-]+)['\"]")
+    val modulePrefix = modulePrefixRegex.findAll(buildGradle).getGroupValue(1) ?: ProjectModel.artifactParseError()
+
+    return BuildGradleInfo(group, version, copyright, platformVersion, modulePrefix)
+}
+
+private class AppComponentsInfo(val appComponents: List<String> = emptyList())
+
+private fun getWebXml(projectStructure: ProjectStructure): Path =
+        projectStructure.getModule(ModuleStructure.WEB_MODULE).path
+                .resolve("web", "WEB-INF", "web.xml")
+
+private fun parseAppComponents(webXml: Path): AppComponentsInfo {
+    val appComponents = parse(webXml).documentElement
+            .xpath("//context-param[param-name[text()='appComponents']]/param-value")
+            .firstOrNull()?.textContent?.split(Regex(" +")) ?: emptyList()
+
+    return AppComponentsInfo(appComponents)
 }
 
-private fun parseJndiDatabase(projectStructure: ProjectStructure): Database? {
-    val contextXml = projectStructure.getModule(CORE_MODULE)
-            .path
-            .resolve("web")
-            .resolve("META-INF")
-            .resolve("context.xml")
+/**
+ * Database settings parsed from a single project file. [database] is null, if the file doesn't define them.
+ */
+private class DatabaseInfo(val database: Database? = null)
+
+private fun getContextXml(projectStructure: ProjectStructure): Path =
+        projectStructure.getModule(CORE_MODULE)
+                .path
+                .resolve("web")
+                .resolve("META-INF")
+                .resolve("context.xml")
 
+private fun parseJndiDatabase(contextXml: Path): DatabaseInfo {
     val contextXmlRoot = parse(contextXml).documentElement
     val resourceElement = contextXmlRoot.xpath("//Resource[@name=\"jdbc/CubaDS\"]").firstOrNull() as? Element
-            ?: return null
+            ?: return DatabaseInfo()
 
     return Database(
             getDbTypeByDriver(resourceElement["driverClassName"]),
@@ -144,16 +176,17 @@ private fun parseJndiDatabase(projectStructure: ProjectStructure): Database? {
             resourceElement["username"],
             resourceElement["password"],
             DataSourceProvider.JNDI
-    )
+    ).let(::DatabaseInfo)
 }
 
-private fun parseApplicationDatabase(projectStructure: ProjectStructure): Database? {
-    val appPropertiesPath = projectStructure.getModule(CORE_MODULE)
-            .path
-            .resolve("src")
-            .resolve(projectStructure.rootPackageDirectory)
-            .resolve("app.properties")
+private fun getAppProperties(projectStructure: ProjectStructure): Path =
+        projectStructure.getModule(CORE_MODULE)
+                .path
+                .resolve("src")
+                .resolve(projectStructure.rootPackageDirectory)
+                .resolve("app.properties")
 
+private fun parseApplicationDatabase(appPropertiesPath: Path): DatabaseInfo {
     val properties = Properties(appPropertiesPath)
 
     val url = properties["cuba.dataSource.jdbcUrl"]
@@ -179,7 +212,7 @@ private fun parseApplicationDatabase(projectStructure: ProjectStructure): Databa
                 username,
                 password,
                 DataSourceProvider.Application
-        )
+        ).let(::DatabaseInfo)
     } else {
         return Database(
                 dbType,
@@ -189,7 +222,7 @@ private fun parseApplicationDatabase(projectStructure: ProjectStructure): Databa
                 username,
                 password,
                 DataSourceProvider.Application
-        )
+        ).let(::DatabaseInfo)
     }
 }
 
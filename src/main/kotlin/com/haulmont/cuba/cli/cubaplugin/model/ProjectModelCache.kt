@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.google.common.hash.Hashing
+import com.google.common.io.MoreFiles
+import com.google.gson.Gson
+import com.google.gson.JsonElement
+import com.haulmont.cuba.cli.CLI_VERSION
+import com.haulmont.cuba.cli.thisClassLogger
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.logging.Level
+
+/**
+ * Caches values parsed from project files, such as build.gradle or metadata.xml, between prompts, commands and CLI launches.
+ *
+ * Every value is stored along with the fingerprint of the file it was parsed from: file size, modification time
+ * and content hash. Value is reparsed only if the fingerprint of its file has changed.
+ * If only modification time has changed, but content hash is the same, cached value is still used.
+ *
+ * While project files are watched by [ProjectWatcher], values are verified once and then are returned
+ * without checking their files, until the watcher reports a change, or the CLI writes the file itself.
+ *
+ * Cache of each project is persisted as json file in [cacheDirectory].
+ */
+class ProjectModelCache(private val cacheDirectory: Path = DEFAULT_CACHE_DIRECTORY) {
+
+    private val projects: MutableMap<Path, ProjectFilesCache> = ConcurrentHashMap()
+
+    fun forProject(projectRoot: Path): ProjectFilesCache =
+            projects.computeIfAbsent(projectRoot.toAbsolutePath().normalize()) {
+                ProjectFilesCache(it, cacheDirectory)
+            }
+
+    /**
+     * Drops all in-memory and persisted values of the project.
+     */
+    fun invalidate(projectRoot: Path) {
+        forProject(projectRoot).clear()
+    }
+
+    /**
+     * Makes values of changed [files] be checked on next access in all loaded project caches.
+     */
+    internal fun filesChanged(files: Set<Path>) {
+        projects.values.forEach { it.filesChanged(files) }
+    }
+
+    companion object {
+        /**
+         * Root directory for all CLI caches.
+         */
+        val CACHE_ROOT: Path = Paths.get(System.getProperty("user.home"), ".haulmont", "cli", "cache")
+
+        val DEFAULT_CACHE_DIRECTORY: Path = CACHE_ROOT.resolve("projects")
+    }
+}
+
+/**
+ * Cached values of single project, keyed by value name.
+ */
+class ProjectFilesCache internal constructor(val projectRoot: Path, cacheDirectory: Path) {
+
+    private val logger by thisClassLogger()
+
+    private val gson = Gson()
+
+    private val cacheFile: Path = cacheDirectory.resolve(
+            Hashing.murmur3_128().hashString(projectRoot.toString(), StandardCharsets.UTF_8).toString() + ".json")
+
+    private val entries: MutableMap<String, CacheEntry> by lazy { load() }
+
+    private var dirty: Boolean = false
+
+    /**
+     * Files watched for changes, or null, if the project isn't watched.
+     */
+    private var watchedFiles: ((Path) -> Boolean)? = null
+
+    /**
+     * Keys of values, which files were checked after the watching was started, and weren't reported as changed since.
+     */
+    private val verified: MutableSet<String> = HashSet()
+
+    /**
+     * Returns value with [key], if the file it was parsed from is unchanged.
+     * Otherwise, locates the file with [locate], parses it with [parse] and stores the result.
+     *
+     * Exceptions thrown by [locate] or [parse] are propagated and nothing is cached in this case.
+     */
+    @Synchronized
+    fun <T : Any> get(key: String, type: Class<T>, locate: () -> Path, parse: (Path) -> T): T {
+        val entry = entries[key]
+        if (entry != null && entry.value != null && (key in verified || isUpToDate(entry))) {
+            try {
+                return gson.fromJson(entry.value, type).also {
+                    markVerified(key, file = Paths.get(entry.path))
+                }
+            } catch (e: Exception) {
+                logger.log(Level.WARNING, "Unable to read cached value $key", e)
+            }
+        }
+
+        val file = locate()
+        val value = parse(file)
+
+        val attributes = Files.readAttributes(file, BasicFileAttributes::class.java)
+        entries[key] = CacheEntry(
+                file.toAbsolutePath().toString(),
+                attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                hash(file),
+                gson.toJsonTree(value, type))
+        dirty = true
+        markVerified(key, file)
+
+        return value
+    }
+
+    inline fun <reified T : Any> get(key: String, noinline locate: () -> Path, noinline parse: (Path) -> T): T =
+            get(key, T::class.java, locate, parse)
+
+    /**
+     * Forgets value with [key], so it will be reparsed on next access.
+     */
+    @Synchronized
+    fun invalidate(key: String) {
+        verified.remove(key)
+        if (entries.remove(key) != null) {
+            dirty = true
+        }
+    }
+
+    /**
+     * Starts trusting values of [watchedFiles] after their first check, or stops, if [watchedFiles] is null.
+     * Also called, when watch events were lost, so all values are checked again.
+     */
+    @Synchronized
+    internal fun watch(watchedFiles: ((Path) -> Boolean)?) {
+        this.watchedFiles = watchedFiles
+        verified.clear()
+    }
+
+    /**
+     * Makes values of changed, created or deleted [files] be checked on next access.
+     */
+    @Synchronized
+    internal fun filesChanged(files: Set<Path>) {
+        verified.removeAll { key ->
+            entries[key]?.let { Paths.get(it.path).normalize() in files } ?: true
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        verified.clear()
+        entries.clear()
+        dirty = false
+        try {
+            Files.deleteIfExists(cacheFile)
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to delete project cache $cacheFile", e)
+        }
+    }
+
+    /**
+     * Persists changed values. Failures are only logged, as the cache may always be rebuilt.
+     */
+    @Synchronized
+    fun flush() {
+        if (!dirty) return
+
+        try {
+            Files.createDirectories(cacheFile.parent)
+            val tmpFile = Files.createTempFile(cacheFile.parent, cacheFile.fileName.toString(), ".tmp")
+            Files.newBufferedWriter(tmpFile).use {
+                gson.toJson(CacheFile(CLI_VERSION, projectRoot.toString(), entries), it)
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            dirty = false
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to save project cache $cacheFile", e)
+        }
+    }
+
+    private fun markVerified(key: String, file: Path) {
+        if (watchedFiles?.invoke(file.toAbsolutePath().normalize()) == true) {
+            verified += key
+        }
+    }
+
+    private fun isUpToDate(entry: CacheEntry): Boolean {
+        val file = Paths.get(entry.path)
+
+        val attributes = try {
+            Files.readAttributes(file, BasicFileAttributes::class.java)
+        } catch (e: IOException) {
+            return false
+        }
+
+        if (attributes.size() != entry.size)
+            return false
+
+        val modified = attributes.lastModifiedTime().toMillis()
+        if (modified == entry.modified)
+            return true
+
+//        file is touched, but its content may be the same
+        if (hash(file) != entry.hash)
+            return false
+
+        entry.modified = modified
+        dirty = true
+        return true
+    }
+
+    private fun load(): MutableMap<String, CacheEntry> {
+        val result: MutableMap<String, CacheEntry> = mutableMapOf()
+
+        if (!Files.exists(cacheFile))
+            return result
+
+        try {
+            val stored = Files.newBufferedReader(cacheFile).use {
+                gson.fromJson(it, CacheFile::class.java)
+            }
+            if (stored != null && stored.cliVersion == CLI_VERSION && stored.projectRoot == projectRoot.toString()) {
+                result.putAll(stored.entries)
+            }
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Unable to read project cache $cacheFile", e)
+        }
+
+        return result
+    }
+
+    private fun hash(file: Path): String =
+            MoreFiles.asByteSource(file).hash(Hashing.murmur3_128()).toString()
+
+    private class CacheFile(
+            val cliVersion: String = "",
+            val projectRoot: String = "",
+            val entries: Map<String, CacheEntry> = mapOf()
+    )
+
+    private class CacheEntry(
+            val path: String = "",
+            val size: Long = 0,
+            var modified: Long = 0,
+            val hash: String = "",
+            val value: JsonElement? = null
+    )
+}
@@ -22,6 +22,7 @@ import com.haulmont.cuba.cli.generation.parse
 import com.haulmont.cuba.cli.generation.xpath
 import com.haulmont.cuba.cli.kodein
 import com.haulmont.cuba.cli.resolve
+import net.sf.practicalxml.DomUtil
 import org.kodein.di.direct
 import org.kodein.di.generic.instance
 import org.w3c.dom.Element
@@ -42,19 +43,36 @@ class ProjectStructure {
 
     val settingsGradle: Path = path.resolve("settings.gradle") orFail "No settings.gradle found"
 
+    /**
+     * Cache of values parsed from project files, shared by all [ProjectStructure] instances of the project.
+     */
+    val cache: ProjectFilesCache by lazy {
+        kodein.direct.instance<ProjectModelCache>().forProject(path)
+    }
+
+    /**
+     * Index of project sources, shared by all [ProjectStructure] instances of the project during a command.
+     */
+    val fileIndex: ProjectFileIndex by lazy {
+        kodein.direct.instance<ProjectFileIndexManager>().getIndex(path)
+    }
+
+    internal val metadata: MetadataInfo by lazy {
+        cache.get("metadataXml", { findGlobalMetadataXml(path, fileIndex) }, ::parseMetadata)
+    }
+
     val rootPackage: String by lazy {
-        findRootPackage(path)
-                ?: throw ProjectFileNotFoundException("Unable to find root package")
+        metadata.rootPackage ?: throw ProjectFileNotFoundException("Unable to find root package")
     }
 
     val rootPackageDirectory: String by lazy {
         rootPackage.replace('.', '/')
     }
 
-    fun getModule(name: String): ModuleStructure = ModuleStructure(name, rootPackage, path)
+    fun getModule(name: String): ModuleStructure = ModuleStructure(name, rootPackage, path, fileIndex)
 }
 
-class ModuleStructure(val name: String, val rootPackage: String, projectRoot: Path) {
+class ModuleStructure(val name: String, val rootPackage: String, projectRoot: Path, private val fileIndex: ProjectFileIndex? = null) {
     val path: Path = projectRoot.resolve("modules", name) orFail "Module $name not found"
 
     val src: Path by lazy {
@@ -66,14 +84,11 @@ class ModuleStructure(val name: String, val rootPackage: String, projectRoot: Pa
     }
 
     val metadataXml: Path by lazy {
-        Files.walk(src)
-                .filter { Files.isRegularFile(it) and (it.fileName.toString() == "metadata.xml") }
-                .findFirst()
-                .orElse(null) orFail "Module $name metadata.xml not found"
+        findFile("metadata.xml") orFail "Module $name metadata.xml not found"
     }
 
     val persistenceXml: Path by lazy {
-        src.findFile("persistence.xml") orFail "Module $name persistence.xml not found"
+        findFile("persistence.xml") orFail "Module $name persistence.xml not found"
     }
 
     val screensXml: Path by lazy {
@@ -84,11 +99,17 @@ class ModuleStructure(val name: String, val rootPackage: String, projectRoot: Pa
     }
     val springXml: Path by lazy {
         val fileName = if (name == "core") "spring.xml" else "web-spring.xml"
-        src.findFile(fileName) orFail "Module $name spring.xml not found"
+        findFile(fileName) orFail "Module $name spring.xml not found"
     }
 
     fun resolvePackagePath(packageName: String) = src.resolve(packageName.replace('.', '/'))
 
+    /**
+     * Looks for the file in the project file index first, and walks module sources only if the index doesn't know the file.
+     */
+    private fun findFile(fileName: String): Path? =
+            fileIndex?.findFile(name, fileName) ?: src.findFile(fileName)
+
 
     companion object {
         const val CORE_MODULE = "core"
@@ -106,15 +127,30 @@ private infix fun Path?.orFail(message: String): Path =
         this?.takeIf { Files.exists(this) } ?: throw ProjectFileNotFoundException(message)
 
 
-private fun findRootPackage(projectRoot: Path): String? {
+private fun findGlobalMetadataXml(projectRoot: Path, fileIndex: ProjectFileIndex): Path {
     val globalModuleSrc = projectRoot.resolve("modules/global/src")
 
-    globalModuleSrc.takeIf { Files.exists(it) }
-            ?.findFile("metadata.xml")?.let {
-                parse(it).documentElement.xpath("//metadata-model").firstOrNull() as Element
-            }?.let {
-                return it["root-package"]
-            } ?: throw ProjectFileNotFoundException("Unable to find root package")
+    return globalModuleSrc.takeIf { Files.exists(it) }
+            ?.let { fileIndex.findFile(ModuleStructure.GLOBAL_MODULE, "metadata.xml") ?: it.findFile("metadata.xml") }
+            ?: throw ProjectFileNotFoundException("Unable to find root package")
+}
+
+/**
+ * Values of global module metadata.xml, that are used by [ProjectStructure] and [ProjectModel].
+ */
+internal class MetadataInfo(val rootPackage: String? = null, val namespace: String = "")
+
+internal fun parseMetadata(metadataXml: Path): MetadataInfo {
+    val documentElement = parse(metadataXml).documentElement
+
+    val rootPackage = (documentElement.xpath("//metadata-model").firstOrNull() as Element)["root-package"]
+
+    val namespace = DomUtil.getChild(documentElement, "metadata-model")
+            ?.attributes
+            ?.getNamedItem("namespace")
+            ?.nodeValue ?: ""
+
+    return MetadataInfo(rootPackage, namespace)
 }
 
 private fun Path.findFile(name: String): Path? =
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.haulmont.cuba.cli.WorkingDirectoryManager
+import com.haulmont.cuba.cli.cubaplugin.di.cubaKodein
+import com.haulmont.cuba.cli.kodein
+import com.haulmont.cuba.cli.thisClassLogger
+import org.kodein.di.generic.instance
+import java.io.Closeable
+import java.io.IOException
+import java.nio.file.*
+import java.nio.file.StandardWatchEventKinds.*
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.logging.Level
+import kotlin.concurrent.thread
+
+/**
+ * Watches project files with [WatchService] on a background thread and reports their changes to [listener].
+ *
+ * Watched directories are the project root with Gradle scripts, `modules` and every module directory,
+ * and module `src` and `web` directories with all subdirectories, except top level [ProjectFileIndex.SKIPPED_DIRECTORIES].
+ * Directories created in watched trees are registered as soon as they are reported.
+ *
+ * If the event queue overflows, changes are unknown, so the listener falls back to checking files, as without watching.
+ * Watching is not started at all, if the file system has no native watch service, as the polling implementation
+ * reports changes with a delay of several seconds, or if directories can't be registered, e.g. due to OS limits.
+ */
+class ProjectWatcher(val projectRoot: Path, private val listener: Listener) : Closeable {
+
+    interface Listener {
+        /**
+         * All directories are registered, and changes of files accepted by [isWatched] are reported from now on.
+         */
+        fun watchStarted(isWatched: (Path) -> Boolean)
+
+        /**
+         * Reports changed, created or deleted [files]. All paths are absolute and normalized.
+         */
+        fun filesChanged(files: Set<Path>)
+
+        /**
+         * Events were lost, so any watched file may have been changed.
+         */
+        fun changesLost()
+
+        fun watchStopped()
+    }
+
+    private val logger by thisClassLogger()
+
+    private val directories: MutableMap<WatchKey, Path> = ConcurrentHashMap()
+
+    private val watchedDirectories: MutableSet<Path> = ConcurrentHashMap.newKeySet()
+
+    @Volatile
+    private var watchService: WatchService? = null
+
+    @Volatile
+    private var closed: Boolean = false
+
+    fun start() {
+        thread(isDaemon = true, name = "project-watcher") {
+            try {
+                watch()
+            } finally {
+                listener.watchStopped()
+            }
+        }
+    }
+
+    fun isWatched(file: Path): Boolean = file.parent in watchedDirectories
+
+    override fun close() {
+        closed = true
+        watchService?.close()
+    }
+
+    private fun watch() {
+        val service = try {
+            projectRoot.fileSystem.newWatchService()
+        } catch (e: Exception) {
+            logger.log(Level.WARNING, "Unable to create watch service, project files will be checked before use", e)
+            return
+        }
+
+        if (service.javaClass.simpleName == "PollingWatchService") {
+            logger.log(Level.INFO, "Native watch service isn't available, project files will be checked before use")
+            service.close()
+            return
+        }
+
+        watchService = service
+        if (closed) {
+            service.close()
+            return
+        }
+
+        try {
+            registerAll(service)
+            listener.watchStarted(::isWatched)
+
+            while (true) {
+                val changed = mutableSetOf<Path>()
+                var lost = false
+
+                var key: WatchKey? = service.take()
+                while (key != null) {
+                    lost = processEvents(service, key, changed) || lost
+                    key = service.poll()
+                }
+
+                if (lost) {
+                    logger.log(Level.INFO, "Project watch events were lost")
+                    registerAll(service)
+                    listener.changesLost()
+                } else if (changed.isNotEmpty()) {
+                    listener.filesChanged(changed)
+                }
+            }
+        } catch (e: ClosedWatchServiceException) {
+        } catch (e: InterruptedException) {
+        } catch (e: IOException) {
+            logger.log(Level.WARNING, "Unable to watch project $projectRoot, project files will be checked before use", e)
+        } finally {
+            service.close()
+        }
+    }
+
+    /**
+     * @return true, if events were lost
+     */
+    private fun processEvents(service: WatchService, key: WatchKey, changed: MutableSet<Path>): Boolean {
+        var lost = false
+        val directory = directories[key]
+
+        for (event in key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                lost = true
+                continue
+            }
+
+            val path = directory?.resolve(event.context() as Path) ?: continue
+            if (isSkipped(path))
+                continue
+
+            changed.add(path)
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                val relative = projectRoot.relativize(path)
+                when {
+                    isModuleDirectory(relative) -> registerAll(service)
+                    isModuleTree(relative) -> registerTree(service, path, changed)
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key)?.let { watchedDirectories.remove(it) }
+        }
+
+        return lost
+    }
+
+    private fun registerAll(service: WatchService) {
+        register(service, projectRoot)
+
+        val modules = projectRoot.resolve("modules")
+        if (!Files.isDirectory(modules))
+            return
+        register(service, modules)
+
+        val moduleDirectories = Files.newDirectoryStream(modules) { Files.isDirectory(it) }.use { it.toList() }
+        for (module in moduleDirectories) {
+            register(service, module)
+
+            MODULE_TREES.map { module.resolve(it) }
+                    .filter { Files.isDirectory(it) }
+                    .forEach { registerTree(service, it, null) }
+        }
+    }
+
+    /**
+     * Registers [start] directory and its subdirectories. As files may be created before the directory is registered,
+     * all found files and directories are added to [changed], if it is passed.
+     */
+    private fun registerTree(service: WatchService, start: Path, changed: MutableSet<Path>?) {
+        Files.walkFileTree(start, object : SimpleFileVisitor<Path>() {
+            override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if (dir != start && isSkipped(dir))
+                    return FileVisitResult.SKIP_SUBTREE
+
+                register(service, dir)
+                changed?.add(dir)
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                changed?.add(file)
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult =
+                    FileVisitResult.CONTINUE
+        })
+    }
+
+    private fun register(service: WatchService, directory: Path) {
+        if (directory in watchedDirectories)
+            return
+
+        directories[directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY)] = directory
+        watchedDirectories.add(directory)
+    }
+
+    private fun isModuleDirectory(relative: Path): Boolean =
+            relative.getName(0).toString() == "modules" && relative.nameCount <= 2
+
+    private fun isModuleTree(relative: Path): Boolean =
+            relative.nameCount >= 3 && relative.getName(0).toString() == "modules" && relative.getName(2).toString() in MODULE_TREES
+
+    /**
+     * Returns true for [ProjectFileIndex.SKIPPED_DIRECTORIES] directly under the project, module or module tree root.
+     * Files inside skipped directories are never reported, as the directories aren't registered.
+     */
+    private fun isSkipped(path: Path): Boolean {
+        val parent = path.parent ?: return false
+        val relative = projectRoot.relativize(parent)
+        val isRoot = parent == projectRoot
+                || relative.nameCount == 2 && isModuleDirectory(relative)
+                || relative.nameCount == 3 && isModuleTree(relative)
+
+        return isRoot && ProjectFileIndex.isSkipped(parent, path)
+    }
+
+    companion object {
+        private val MODULE_TREES = listOf("src", "web")
+    }
+}
+
+/**
+ * Watches the working directory project in shell mode and marks only the changed parts of project caches dirty:
+ * values of [ProjectModelCache], records of [EntityIndex] and entries of [ProjectFileIndex].
+ */
+class ProjectWatchManager {
+
+    private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
+
+    private val modelCache: ProjectModelCache by kodein.instance()
+
+    private val fileIndexManager: ProjectFileIndexManager by kodein.instance()
+
+    private val entitySearch: EntitySearch by cubaKodein.instance()
+
+    private var watcher: ProjectWatcher? = null
+
+    /**
+     * Listener of the current watcher. Listeners of closed watchers may still be called from their threads,
+     * and should not affect caches of the current one.
+     */
+    @Volatile
+    private var invalidator: CachesInvalidator? = null
+
+    /**
+     * Starts watching of the working directory, if it is a project, and stops watching of the previous directory.
+     */
+    fun directoryChanged() {
+        val directory = workingDirectoryManager.absolutePath.normalize()
+        if (watcher?.projectRoot == directory)
+            return
+
+        stop()
+
+        if (Files.isRegularFile(directory.resolve("build.gradle"))) {
+            val listener = CachesInvalidator(directory)
+            invalidator = listener
+            watcher = ProjectWatcher(directory, listener).apply { start() }
+        }
+    }
+
+    /**
+     * Marks cached values and entity records of [files], written by the CLI itself, to be checked on next access.
+     * Watch events are delivered asynchronously, so the next command might otherwise get values of the previous content.
+     */
+    fun filesWritten(files: Set<Path>) {
+        val written = files.mapTo(HashSet()) { it.toAbsolutePath().normalize() }
+
+        modelCache.filesChanged(written)
+        entitySearch.filesChanged(written)
+    }
+
+    fun stop() {
+        invalidator = null
+        watcher?.close()
+        watcher = null
+    }
+
+    private inner class CachesInvalidator(val projectRoot: Path) : ProjectWatcher.Listener {
+
+        private var isWatched: ((Path) -> Boolean)? = null
+
+        override fun watchStarted(isWatched: (Path) -> Boolean) {
+            if (invalidator !== this)
+                return
+
+            this.isWatched = isWatched
+            watch(isWatched)
+        }
+
+        override fun filesChanged(files: Set<Path>) {
+            modelCache.forProject(projectRoot).filesChanged(files)
+            entitySearch.getIndex(projectRoot).filesChanged(files)
+            fileIndexManager.filesChanged(projectRoot, files)
+        }
+
+        override fun changesLost() {
+            if (invalidator === this) {
+                watch(isWatched)
+            }
+        }
+
+        override fun watchStopped() {
+            val current = invalidator
+            if (current === this || current?.projectRoot != projectRoot) {
+                watch(null)
+            }
+        }
+
+        private fun watch(isWatched: ((Path) -> Boolean)?) {
+            modelCache.forProject(projectRoot).watch(isWatched)
+            entitySearch.getIndex(projectRoot).watch(isWatched)
+            fileIndexManager.watch(projectRoot, isWatched != null)
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Arrays
+import java.util.concurrent.ConcurrentHashMap
+import java.util.stream.Collectors
+
+/**
+ * Version directories of a single template or snippets root, sorted by version.
+ *
+ * Versions with at most [PACKED_COMPONENTS] numbers, each less than 2^15, are packed into long keys,
+ * which order is the same as [PlatformVersion] order, so lookups are a binary search over a primitive array.
+ * If any version can't be packed, catalog falls back to binary search with [PlatformVersion.compareTo].
+ *
+ * Catalog is immutable and may be used concurrently.
+ */
+internal class VersionDirectoryCatalog private constructor(
+        val baseDirectory: Path,
+        private val modified: Long,
+        private val versions: Array<PlatformVersion>,
+        private val directories: Array<Path>
+) {
+    private val keys: LongArray? = versions.map { pack(it) }.let { packed ->
+        if (packed.any { it == null }) null else LongArray(packed.size) { packed[it]!! }
+    }
+
+    /**
+     * Returns the directory with the greatest version, which is not greater than [version],
+     * or the directory with the least version, if all of them are greater.
+     * If the root doesn't support versions, returns the root itself.
+     */
+    fun find(version: PlatformVersion): Path {
+        if (versions.isEmpty())
+            return baseDirectory
+
+        val key = pack(version)
+        val index = if (keys != null && key != null) {
+            Arrays.binarySearch(keys, key)
+        } else {
+            Arrays.binarySearch(versions, version)
+        }
+
+        val floor = if (index >= 0) index else -index - 2
+
+        return directories[maxOf(floor, 0)]
+    }
+
+    companion object {
+        private const val PACKED_COMPONENTS = 4
+
+        private const val COMPONENT_BITS = 15
+
+        private val catalogs: MutableMap<Path, VersionDirectoryCatalog> = ConcurrentHashMap()
+
+        /**
+         * Returns catalog of [baseDirectory]. Catalog is rebuilt only if the directory modification time has changed,
+         * e.g. if a new version directory was added to a custom template.
+         */
+        fun of(baseDirectory: Path): VersionDirectoryCatalog {
+            val modified = Files.getLastModifiedTime(baseDirectory).toMillis()
+
+            catalogs[baseDirectory]?.takeIf { it.modified == modified }?.let {
+                return it
+            }
+
+            return build(baseDirectory, modified).also {
+                catalogs[baseDirectory] = it
+            }
+        }
+
+        private fun build(baseDirectory: Path, modified: Long): VersionDirectoryCatalog {
+            val children = Files.walk(baseDirectory, 1).use { stream ->
+                stream.filter { Files.isDirectory(it) && it != baseDirectory }
+                        .collect(Collectors.toList())
+            }
+
+            val directoriesByVersions = sortedMapOf<PlatformVersion, Path>()
+            for (directory in children) {
+                val version = try {
+                    PlatformVersion(directory.fileName.toString())
+                } catch (e: Exception) {
+//                    found directory that doesn't conform any version naming rules
+                    return VersionDirectoryCatalog(baseDirectory, modified, arrayOf(), arrayOf())
+                }
+                directoriesByVersions[version] = directory
+            }
+
+            return VersionDirectoryCatalog(
+                    baseDirectory,
+                    modified,
+                    directoriesByVersions.keys.toTypedArray(),
+                    directoriesByVersions.values.toTypedArray())
+        }
+
+        /**
+         * Packs version numbers into a long, padding missing numbers with zeros, as [PlatformVersion.compareTo]
+         * doesn't distinguish trailing zeros. Latest version is packed as the greatest key.
+         */
+        private fun pack(version: PlatformVersion): Long? = when (version) {
+            LatestVersion -> Long.MAX_VALUE
+            is SpecificVersion -> {
+                val numbers = version.versionNumbersWithoutTrailingZeros
+                if (numbers.size > PACKED_COMPONENTS || numbers.any { it >= 1 shl COMPONENT_BITS }) {
+                    null
+                } else {
+                    (0 until PACKED_COMPONENTS).fold(0L) { key, i ->
+                        (key shl COMPONENT_BITS) or numbers.getOrElse(i) { 0 }.toLong()
+                    }
+                }
+            }
+        }
+    }
+}
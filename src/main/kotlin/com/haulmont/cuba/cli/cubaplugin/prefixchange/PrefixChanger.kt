@@ -63,6 +63,6 @@ class PrefixChanger {
                 .replace(modulePrefixRegex, "def modulePrefix = \"$prefix\"")
                 .let { scriptFile.writeText(it) }
 
-        printHelper.fileModified(gradleScriptPath)
+        printHelper.fileWritten(gradleScriptPath)
     }
 }
\ No newline at end of file
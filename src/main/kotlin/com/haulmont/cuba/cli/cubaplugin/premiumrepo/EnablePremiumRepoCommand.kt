@@ -73,7 +73,7 @@ class EnablePremiumRepoCommand : AbstractCommand() {
                 }
             }
 
-            printHelper.fileModified(projectStructure.buildGradle)
+            printHelper.fileWritten(projectStructure.buildGradle)
         } else {
             printWriter.println(messages["repoAlreadyAdded"])
         }
@@ -25,7 +25,6 @@ import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersionsManager
 import com.haulmont.cuba.cli.generation.TemplateProcessor
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersion
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersionParseException
-import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersionsManagerImpl
 import com.haulmont.cuba.cli.prompting.Answers
 import com.haulmont.cuba.cli.prompting.QuestionsList
 import org.kodein.di.Kodein
@@ -35,12 +34,9 @@ import java.nio.file.Files
 import java.nio.file.Paths
 import java.nio.file.attribute.PosixFilePermission
 import java.util.*
-import java.util.logging.Level
 
 @Parameters(commandDescription = "Creates new project")
 class ProjectInitCommand(override val kodein: Kodein = cubaKodein) : GeneratorCommand<ProjectInitModel>(), NonInteractiveInfo {
-    private val logger by thisClassLogger()
-
     private val messages by localMessages()
 
     private val resources by Resources.fromMyPlugin()
@@ -71,12 +67,6 @@ class ProjectInitCommand(override val kodein: Kodein = cubaKodein) : GeneratorCo
 
     override fun preExecute() {
         !context.hasModel("project") || fail("There is an existing project found in current directory.")
-
-        try {
-            (platformVersionsManager as? PlatformVersionsManagerImpl)?.loadThread?.join(20_000)
-        } catch (e: Exception) {
-            logger.log(Level.SEVERE, e) { "" }
-        }
     }
 
     override fun QuestionsList.prompting() {
@@ -204,7 +194,7 @@ class ProjectInitCommand(override val kodein: Kodein = cubaKodein) : GeneratorCo
 
         val templateTips = TemplateProcessor(resources.getTemplate("project"), bindings, PlatformVersion(model.platformVersion)) {
             listOf("modules", "build.gradle", "settings.gradle", "\${gitignore}").forEach { it ->
-                transform(it) { path ->
+                transform(it, parallel = true) { path ->
                     return@transform if (kotlinSupport) {
                         !path.fileName.toString().endsWith(".java")
                     } else {
@@ -214,7 +204,7 @@ class ProjectInitCommand(override val kodein: Kodein = cubaKodein) : GeneratorCo
             }
 
             listOf("gradle", "gradlew", "gradlew.bat").forEach {
-                copy(it)
+                copy(it, parallel = true)
             }
             try {
                 Files.setPosixFilePermissions(cwd.resolve("gradlew"), setOf(PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ))
@@ -130,7 +130,7 @@ class ThemeExtensionCommand : GeneratorCommand<ThemeExtensionModel>() {
 
         settingsGradle.toFile().writeText(lines.joinToString("\n"))
 
-        printHelper.fileModified(settingsGradle)
+        printHelper.fileWritten(settingsGradle)
 
 
         val buildGradle = projectStructure.buildGradle
@@ -144,6 +144,6 @@ class ThemeExtensionCommand : GeneratorCommand<ThemeExtensionModel>() {
                 .let {
                     buildGradle.toFile().writeText(it)
                 }
-        printHelper.fileModified(buildGradle)
+        printHelper.fileWritten(buildGradle)
     }
 }
\ No newline at end of file
@@ -74,7 +74,7 @@ class UpdateScriptCommand : GeneratorCommand<String>() {
 
         val updateScriptPath = currentYearUpdateDir.resolve(scriptName)
         updateScriptPath.toFile().also { it.createNewFile() }
-        printHelper.fileCreated(updateScriptPath)
+        printHelper.fileWritten(updateScriptPath, created = true)
     }
 
     private fun getYear() = (calendar[Calendar.YEAR] - 2000).toString()
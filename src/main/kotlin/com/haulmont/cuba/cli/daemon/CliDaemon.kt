@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.daemon
+
+import com.haulmont.cuba.cli.*
+import org.jline.terminal.Attributes
+import org.jline.terminal.Terminal
+import org.jline.terminal.TerminalBuilder
+import org.kodein.di.generic.instance
+import java.io.*
+import java.net.*
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.logging.Level
+
+/**
+ * Resident CLI process, that executes single commands sent by the daemon client, so they don't pay for JVM startup,
+ * plugins loading and caches warming up.
+ *
+ * Commands are executed one by one in the daemon thread. For every request the working directory is set to
+ * the client one, and a dumb terminal is created over the client standard input and output, so prompts and printed
+ * messages work the same way as in the single command mode.
+ *
+ * Daemon stops after [idleTimeoutMillis] without requests, or by `cuba daemon stop`.
+ */
+class CliDaemon(private val cli: SingleCommandCli, private val idleTimeoutMillis: Int = DEFAULT_IDLE_TIMEOUT) {
+
+    private val log by thisClassLogger()
+
+    private val context: CliContext by kodein.instance()
+
+    private val workingDirectoryManager: WorkingDirectoryManager by kodein.instance()
+
+    private val writer: PrintWriter by kodein.instance()
+
+    private val token: String = ByteArray(32).let { bytes ->
+        SecureRandom().nextBytes(bytes)
+        bytes.joinToString("") { String.format("%02x", it) }
+    }
+
+    fun run() {
+        if (isAnotherDaemonRunning()) {
+            log.info("Daemon is already running")
+            return
+        }
+
+        ServerSocket(0, BACKLOG, InetAddress.getLoopbackAddress()).use { server ->
+            server.soTimeout = idleTimeoutMillis
+            DaemonProtocol.writeDaemonInfo(DaemonInfo(server.localPort, token))
+            log.info("Daemon is listening on port ${server.localPort}")
+
+            try {
+                while (true) {
+                    val socket = try {
+                        server.accept()
+                    } catch (e: SocketTimeoutException) {
+                        log.info("Daemon is stopped after idle timeout")
+                        break
+                    }
+
+                    val stop = socket.use { serve(it) }
+                    if (stop) {
+                        log.info("Daemon is stopped by client")
+                        break
+                    }
+                }
+            } finally {
+//                another daemon may have been started, if this one was unresponsive
+                if (DaemonProtocol.readDaemonInfo()?.token == token) {
+                    Files.deleteIfExists(DaemonProtocol.infoFile)
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true, if the daemon should stop
+     */
+    private fun serve(socket: Socket): Boolean {
+        try {
+            socket.soTimeout = HANDSHAKE_TIMEOUT
+            val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+            val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+
+            if (!MessageDigest.isEqual(input.readUTF().toByteArray(), token.toByteArray())) {
+                log.warning("Request with wrong token is rejected")
+                return false
+            }
+
+            val type = input.readByte().toInt()
+            val workingDirectory = input.readUTF()
+            val args = Array(input.readInt()) { input.readUTF() }
+            socket.soTimeout = 0
+
+            if (type == DaemonProtocol.STOP) {
+                DaemonProtocol.writeExit(output, 0)
+                return true
+            }
+
+            val status = execute(args, workingDirectory, FrameInputStream(input), FrameOutputStream(output))
+            DaemonProtocol.writeExit(output, status)
+        } catch (e: EOFException) {
+//            connection check, that closes the socket without request
+        } catch (e: IOException) {
+            log.log(Level.WARNING, "Client connection failed", e)
+        }
+        return false
+    }
+
+    private fun execute(args: Array<String>, workingDirectory: String, input: InputStream, output: OutputStream): Int {
+        val terminal = createTerminal(input, output)
+
+        currentTerminal = terminal
+        workingDirectoryManager.workingDirectory = Paths.get(workingDirectory)
+        try {
+            return if (cli.execute(args)) 0 else 1
+        } catch (e: Exception) {
+            log.log(Level.SEVERE, "Command execution failed", e)
+            return 1
+        } finally {
+            context.clearModels()
+            writer.flush()
+            terminal.flush()
+            currentTerminal = null
+            terminal.close()
+        }
+    }
+
+    /**
+     * Client terminal already echoes input and translates line endings, so the daemon terminal passes them as is.
+     */
+    private fun createTerminal(input: InputStream, output: OutputStream): Terminal {
+        val terminal = TerminalBuilder.builder()
+                .system(false)
+                .name("cuba-cli-daemon")
+                .type(Terminal.TYPE_DUMB)
+                .encoding("UTF-8")
+                .streams(input, output)
+                .build()
+
+        terminal.attributes = terminal.attributes.apply {
+            setLocalFlag(Attributes.LocalFlag.ECHO, false)
+            setOutputFlag(Attributes.OutputFlag.OPOST, false)
+        }
+
+        return terminal
+    }
+
+    private fun isAnotherDaemonRunning(): Boolean {
+        val info = DaemonProtocol.readDaemonInfo() ?: return false
+        return try {
+            Socket(InetAddress.getLoopbackAddress(), info.port).close()
+            true
+        } catch (e: IOException) {
+            false
+        }
+    }
+
+    companion object {
+        const val DEFAULT_IDLE_TIMEOUT: Int = 30 * 60 * 1000
+
+        private const val HANDSHAKE_TIMEOUT: Int = 10 * 1000
+
+        private const val BACKLOG: Int = 16
+
+        /**
+         * True in the daemon process. Must be set before the first terminal usage.
+         */
+        @Volatile
+        var isActive: Boolean = false
+            internal set
+
+        /**
+         * Terminal of the request, that is being executed.
+         */
+        @Volatile
+        internal var currentTerminal: Terminal? = null
+
+        /**
+         * Writer, that writes to the terminal of the current request, or discards the output between requests.
+         */
+        internal val sessionWriter: Writer = object : Writer() {
+            override fun write(cbuf: CharArray, off: Int, len: Int) {
+                currentTerminal?.writer()?.write(cbuf, off, len)
+            }
+
+            override fun flush() {
+                currentTerminal?.writer()?.flush()
+            }
+
+            override fun close() {}
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.daemon
+
+import java.io.*
+import java.lang.ProcessBuilder.Redirect
+import java.net.InetAddress
+import java.net.Socket
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Paths
+import kotlin.concurrent.thread
+import kotlin.system.exitProcess
+
+private const val DAEMON_START_TIMEOUT: Long = 30 * 1000
+
+private const val MAIN_CLASS: String = "com.haulmont.cuba.cli.EntryPointKt"
+
+/**
+ * Entry point of the thin client, that forwards single commands to [CliDaemon] and starts the daemon when needed.
+ *
+ * Client doesn't touch any CLI infrastructure, so it starts as fast as JVM does. Shell mode and the case,
+ * when the daemon can't be started, are handled by the regular entry point in the client process.
+ *
+ * `cuba daemon` starts the daemon in background and `cuba daemon stop` stops it.
+ */
+fun main(args: Array<String>) {
+    if (args.isEmpty() || args.first() == "shell" || args.first().startsWith("-")) {
+        com.haulmont.cuba.cli.main(args)
+        return
+    }
+
+    when (args.toList()) {
+        listOf("daemon") -> {
+            (connect() ?: startDaemonAndConnect())?.socket?.close()
+            return
+        }
+        listOf("daemon", "stop") -> {
+            stopDaemon()
+            return
+        }
+    }
+
+    val connection = connect() ?: startDaemonAndConnect()
+    if (connection == null) {
+        System.err.println("CUBA CLI daemon isn't available, see ${DaemonProtocol.logFile}")
+        com.haulmont.cuba.cli.main(args)
+        return
+    }
+
+    val status = try {
+        send(connection, DaemonProtocol.RUN, args)
+    } catch (e: IOException) {
+        System.err.println("Connection to CUBA CLI daemon is lost, see ${DaemonProtocol.logFile}")
+        1
+    }
+    exitProcess(status)
+}
+
+internal fun stopDaemon() {
+    connect()?.let { send(it, DaemonProtocol.STOP, arrayOf()) }
+}
+
+private class Connection(val socket: Socket, val token: String)
+
+private fun connect(): Connection? {
+    val info = DaemonProtocol.readDaemonInfo() ?: return null
+    return try {
+        Connection(Socket(InetAddress.getLoopbackAddress(), info.port), info.token)
+    } catch (e: IOException) {
+        null
+    }
+}
+
+/**
+ * Sends the request and prints the daemon output until the exit frame.
+ *
+ * @return exit status of the command
+ */
+private fun send(connection: Connection, type: Int, args: Array<String>): Int = connection.socket.use { socket ->
+    socket.tcpNoDelay = true
+    val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+    val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+
+    DaemonProtocol.writeRequest(output, connection.token, type, System.getProperty("user.dir"), args)
+
+    if (type == DaemonProtocol.RUN) {
+        thread(isDaemon = true, name = "stdin") {
+            forwardInput(output)
+        }
+    }
+
+    printOutput(input)
+}
+
+private fun printOutput(input: DataInputStream): Int {
+    val buffer = ByteArray(8192)
+    while (true) {
+        val type = input.readByte().toInt()
+        var length = input.readInt()
+
+        if (type == DaemonProtocol.EXIT) {
+            System.out.flush()
+            return ByteBuffer.wrap(ByteArray(length).also { input.readFully(it) }).int
+        }
+
+        while (length > 0) {
+            val read = input.read(buffer, 0, minOf(length, buffer.size))
+            if (read < 0)
+                throw EOFException()
+            System.out.write(buffer, 0, read)
+            length -= read
+        }
+        System.out.flush()
+    }
+}
+
+private fun forwardInput(output: DataOutputStream) {
+    try {
+        val buffer = ByteArray(8192)
+        while (true) {
+            val read = System.`in`.read(buffer)
+            if (read < 0)
+                break
+            DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT, buffer, 0, read)
+        }
+        DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT_END)
+    } catch (e: IOException) {
+//        daemon has finished the command and closed the connection
+    }
+}
+
+private fun startDaemonAndConnect(): Connection? {
+    DaemonProtocol.createPrivateDirectory(DaemonProtocol.DAEMON_DIRECTORY)
+
+    ProcessBuilder(daemonCommand())
+            .redirectErrorStream(true)
+            .redirectOutput(Redirect.appendTo(DaemonProtocol.logFile.toFile()))
+            .start()
+            .outputStream.close()
+
+    val deadline = System.currentTimeMillis() + DAEMON_START_TIMEOUT
+    while (System.currentTimeMillis() < deadline) {
+        connect()?.let { return it }
+        Thread.sleep(50)
+    }
+    return null
+}
+
+/**
+ * Command, that starts the daemon with the same java and module path, as the client has.
+ * On unix the daemon ignores SIGHUP, so it survives the terminal, from which it was started.
+ */
+private fun daemonCommand(): List<String> {
+    val command = mutableListOf<String>()
+
+    val nohup = Paths.get("/usr/bin/nohup")
+    if (Files.isExecutable(nohup)) {
+        command += nohup.toString()
+    }
+
+    command += Paths.get(System.getProperty("java.home"), "bin", "java").toString()
+
+    val modulePath = System.getProperty("jdk.module.path")
+    val mainModule = System.getProperty("jdk.module.main")
+    if (mainModule != null) {
+        if (modulePath != null) {
+            command += listOf("--module-path", modulePath)
+        }
+        command += listOf("-m", "$mainModule/$MAIN_CLASS")
+    } else {
+        command += listOf("-cp", System.getProperty("java.class.path"), MAIN_CLASS)
+    }
+
+    command += "daemon"
+    return command
+}
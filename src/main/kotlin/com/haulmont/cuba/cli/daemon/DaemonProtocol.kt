@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.daemon
+
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.*
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.*
+
+/**
+ * Wire format and shared files of [CliDaemon] and its client.
+ *
+ * Client sends a request header, that is the daemon token, request type, working directory and arguments,
+ * followed by [INPUT] frames with its standard input. Daemon answers with [OUTPUT] frames and the final [EXIT] frame
+ * with the exit status. Every frame is a type byte, data length and data.
+ *
+ * Daemon listens only on the loopback interface. As any local user may connect to it, every request must start with
+ * the random token, that is stored in the user home directory in the file, readable only by its owner.
+ */
+internal object DaemonProtocol {
+    const val RUN: Int = 1
+    const val STOP: Int = 2
+
+    const val OUTPUT: Int = 1
+    const val EXIT: Int = 2
+    const val INPUT: Int = 3
+    const val INPUT_END: Int = 4
+
+    val DAEMON_DIRECTORY: Path = Paths.get(System.getProperty("user.home"), ".haulmont", "cli", "daemon")
+
+    /**
+     * Daemon of another CLI version may have other commands, so every version uses its own daemon.
+     */
+    val infoFile: Path by lazy {
+        val properties = Properties()
+        DaemonProtocol::class.java.getResourceAsStream("/com/haulmont/cuba/cli/application.properties").use {
+            properties.load(InputStreamReader(it, StandardCharsets.UTF_8))
+        }
+        DAEMON_DIRECTORY.resolve("daemon-${properties["version"]}.properties")
+    }
+
+    val logFile: Path
+        get() = DAEMON_DIRECTORY.resolve("daemon.log")
+
+    fun writeRequest(output: DataOutputStream, token: String, type: Int, workingDirectory: String, args: Array<String>) {
+        output.writeUTF(token)
+        output.writeByte(type)
+        output.writeUTF(workingDirectory)
+        output.writeInt(args.size)
+        args.forEach { output.writeUTF(it) }
+        output.flush()
+    }
+
+    fun writeFrame(output: DataOutputStream, type: Int, data: ByteArray = ByteArray(0), offset: Int = 0, length: Int = data.size) {
+        synchronized(output) {
+            output.writeByte(type)
+            output.writeInt(length)
+            output.write(data, offset, length)
+            output.flush()
+        }
+    }
+
+    fun writeExit(output: DataOutputStream, status: Int) {
+        writeFrame(output, EXIT, ByteBuffer.allocate(4).putInt(status).array())
+    }
+
+    fun readDaemonInfo(): DaemonInfo? = try {
+        val properties = Properties()
+        Files.newInputStream(infoFile).use { properties.load(it) }
+        DaemonInfo(properties.getProperty("port").toInt(), properties.getProperty("token"))
+    } catch (e: Exception) {
+        null
+    }
+
+    /**
+     * Writes daemon info to a file, that is accessible only by the current user. On file systems without POSIX
+     * permissions the file is protected only by the user home directory permissions.
+     */
+    fun writeDaemonInfo(info: DaemonInfo) {
+        createPrivateDirectory(DAEMON_DIRECTORY)
+
+        val temp = DAEMON_DIRECTORY.resolve(infoFile.fileName.toString() + ".tmp")
+        Files.deleteIfExists(temp)
+        if (isPosix()) {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+        }
+
+        val properties = Properties()
+        properties["port"] = info.port.toString()
+        properties["token"] = info.token
+        Files.newOutputStream(temp).use { properties.store(it, null) }
+
+        Files.move(temp, infoFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    fun createPrivateDirectory(directory: Path) {
+        if (Files.isDirectory(directory))
+            return
+
+        if (isPosix()) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")))
+        } else {
+            Files.createDirectories(directory)
+        }
+    }
+
+    private fun isPosix(): Boolean = "posix" in FileSystems.getDefault().supportedFileAttributeViews()
+}
+
+internal class DaemonInfo(val port: Int, val token: String)
+
+/**
+ * Sends everything written to it as [DaemonProtocol.OUTPUT] frames.
+ */
+internal class FrameOutputStream(private val output: DataOutputStream) : OutputStream() {
+    override fun write(b: Int) {
+        write(byteArrayOf(b.toByte()), 0, 1)
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        if (len > 0) {
+            DaemonProtocol.writeFrame(output, DaemonProtocol.OUTPUT, b, off, len)
+        }
+    }
+}
+
+/**
+ * Reads data of [DaemonProtocol.INPUT] frames until [DaemonProtocol.INPUT_END] frame.
+ */
+internal class FrameInputStream(private val input: DataInputStream) : InputStream() {
+    private var remaining = 0
+
+    private var ended = false
+
+    override fun read(): Int {
+        val buffer = ByteArray(1)
+        return if (read(buffer, 0, 1) < 0) -1 else buffer[0].toInt() and 0xFF
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (len == 0)
+            return 0
+
+        while (remaining == 0) {
+            if (ended)
+                return -1
+
+            val type = input.readByte().toInt()
+            remaining = input.readInt()
+            if (type != DaemonProtocol.INPUT) {
+                input.skipBytes(remaining)
+                remaining = 0
+                ended = true
+            }
+        }
+
+        val read = input.read(b, off, minOf(len, remaining))
+        if (read < 0)
+            throw EOFException()
+        remaining -= read
+        return read
+    }
+}
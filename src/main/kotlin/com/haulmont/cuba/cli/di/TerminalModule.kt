@@ -19,6 +19,8 @@ package com.haulmont.cuba.cli.di
 import com.haulmont.cuba.cli.ColoredWriter
 import com.haulmont.cuba.cli.GenerationProgressPrinter
 import com.haulmont.cuba.cli.PrintHelper
+import com.haulmont.cuba.cli.StartupProfiler
+import com.haulmont.cuba.cli.daemon.CliDaemon
 import org.jline.reader.Completer
 import org.jline.reader.LineReader
 import org.jline.reader.LineReaderBuilder
@@ -29,6 +31,7 @@ import org.kodein.di.direct
 import org.kodein.di.generic.bind
 import org.kodein.di.generic.factory
 import org.kodein.di.generic.instance
+import org.kodein.di.generic.provider
 import org.kodein.di.generic.singleton
 import java.io.PrintWriter
 import java.util.logging.Level
@@ -46,13 +49,22 @@ val terminalModule = Kodein.Module {
                 .build()
     }
 
-    bind<Terminal>() with singleton {
+    bind<Terminal>(tag = "system") with singleton {
         System.setProperty("org.jline.terminal.conemu.disable-activate", "true")
-        TerminalBuilder.builder().build()
+        StartupProfiler.phase("terminal") { TerminalBuilder.builder().build() }
+    }
+
+//    daemon creates a terminal for every client request
+    bind<Terminal>() with provider {
+        CliDaemon.currentTerminal ?: instance<Terminal>(tag = "system")
     }
 
     bind<PrintWriter>() with singleton {
-        ColoredWriter(instance<Terminal>().writer())
+        if (CliDaemon.isActive) {
+            ColoredWriter(PrintWriter(CliDaemon.sessionWriter))
+        } else {
+            ColoredWriter(instance<Terminal>().writer())
+        }
     }
 
     bind<PrintHelper>() with singleton { PrintHelper() }
@@ -19,6 +19,7 @@ package com.haulmont.cuba.cli.event
 import com.haulmont.cuba.cli.CliMode
 import com.haulmont.cuba.cli.commands.CliCommand
 import com.haulmont.cuba.cli.commands.CommandsRegistry
+import java.nio.file.Path
 
 interface CliEvent
 
@@ -39,6 +40,12 @@ class AfterCommandExecutionEvent(val command: CliCommand) : CliEvent
 
 class ModelRegisteredEvent(val modelName: String) : CliEvent
 
+/**
+ * Fires after a project file is written by a command, e.g. rendered from a template, edited as xml, properties or gradle script.
+ * [created] is true, if the file is reported as created.
+ */
+class FileWrittenEvent(val path: Path, val created: Boolean) : CliEvent
+
 /**
  * Fires before cli exit.
  */
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import com.google.common.hash.HashFunction
+import com.google.common.hash.Hashing
+import com.google.common.io.MoreFiles
+import java.nio.file.Files
+import java.nio.file.Path
+
+private val contentHash: HashFunction = Hashing.murmur3_128()
+
+/**
+ * Writes [content] to the file, unless the file already has exactly the same content,
+ * so regenerated but unchanged files keep their modification time.
+ *
+ * @return true, if the file was written
+ */
+fun writeIfChanged(path: Path, content: ByteArray): Boolean {
+    if (hasContent(path, content))
+        return false
+
+    Files.write(path, content)
+    return true
+}
+
+/**
+ * Checks if the file has the same [content]. File sizes are compared first, so the file is read only if sizes are equal.
+ */
+fun hasContent(path: Path, content: ByteArray): Boolean {
+    if (!Files.isRegularFile(path) || Files.size(path) != content.size.toLong())
+        return false
+
+    return MoreFiles.asByteSource(path).hash(contentHash) == contentHash.hashBytes(content)
+}
+
+/**
+ * Checks if both files exist and have the same content. File sizes are compared first.
+ */
+fun hasSameContent(first: Path, second: Path): Boolean {
+    if (!Files.isRegularFile(first) || !Files.isRegularFile(second) || Files.size(first) != Files.size(second))
+        return false
+
+    return MoreFiles.asByteSource(first).hash(contentHash) == MoreFiles.asByteSource(second).hash(contentHash)
+}
@@ -16,271 +16,395 @@
 
 package com.haulmont.cuba.cli.generation
 
-import com.google.common.base.Strings
 import com.google.common.xml.XmlEscapers
 import org.w3c.dom.Document
 import org.w3c.dom.DocumentType
 import org.w3c.dom.Element
 import org.w3c.dom.Node
 import java.io.*
-import java.util.*
-
 
+/**
+ * Serializes DOM documents with attributes sorted and placed on separate lines.
+ *
+ * Indents and attribute separators are computed once per depth and column, attributes of an element are ordered
+ * in a reusable buffer, and all parts are written to the writer directly, so serialization allocates almost nothing
+ * besides escaped values. Serializer instance is not thread-safe.
+ */
 internal class DOMSerializer(
-        numIndentSpaces: Int = 0,
+        private val numIndentSpaces: Int = 0,
         private val lineSeparator: String = "\n",
         private val encoding: String = "UTF8",
         private val displayAttributesOnSeparateLine: Boolean = true,
         private val maxLengthOfString: Int = -1
 ) {
 
-    private val indent = buildString {
-        for (i in 0 until numIndentSpaces)
-            append(" ")
-    }
+    private val indents: MutableList<String> = arrayListOf("")
+
+    private val attributeSeparators: MutableMap<Int, String> = hashMapOf()
+
+    private val attributes = AttributeBuffer()
 
     @Throws(IOException::class)
     fun serialize(doc: Document, out: OutputStream) =
-            OutputStreamWriter(out, encoding).use { writer ->
+            OutputStreamWriter(out, encoding).buffered().use { writer ->
                 serialize(doc, writer)
             }
 
 
     @Throws(IOException::class)
     fun serialize(doc: Document, file: File) =
-            FileWriter(file).use { writer -> serialize(doc, writer) }
+            FileWriter(file).buffered().use { writer -> serialize(doc, writer) }
 
 
     @Throws(IOException::class)
     fun serialize(doc: Document, writer: Writer) {
         doc.normalize()
         // Start serialization recursion with no indenting
-        serializeNode(doc, writer, "")
+        serializeNode(doc, writer, 0)
         writer.flush()
     }
 
     @Throws(IOException::class)
     fun serialize(element: Element, writer: Writer) {
         // Start serialization recursion with no indenting
-        serializeNode(element, writer, "")
+        serializeNode(element, writer, 0)
         writer.flush()
     }
 
     @Throws(IOException::class)
-    private fun serializeNode(node: Node, writer: Writer, indentLevel: String) {
+    internal fun serializeNode(node: Node, writer: Writer, depth: Int) {
         // Determine action based on node type
         when (node.nodeType) {
             Node.DOCUMENT_NODE -> {
                 val doc = node as Document
-                /**
-                 * DOM Level 2 code writer.write("");
-                 */
-                writer.write("<?xml version=\"")
-                writer.write(doc.xmlVersion)
-                writer.write("\" encoding=\"UTF-8\" standalone=\"")
-                if (doc.xmlStandalone)
-                    writer.write("yes")
-                else
-                    writer.write("no")
-                writer.write("\"")
-                writer.write("?>")
-                writer.write(lineSeparator)
+                writeDeclaration(writer, doc.xmlVersion, doc.xmlStandalone)
 
                 // recurse on each top-level node
                 val nodes = node.getChildNodes()
                 if (nodes != null)
                     for (i in 0 until nodes.length)
-                        serializeNode(nodes.item(i), writer, "")
+                        serializeNode(nodes.item(i), writer, 0)
             }
             Node.ELEMENT_NODE -> {
                 val name = node.nodeName
-                val beginStr = "$indentLevel<$name"
-                writer.write(beginStr)
-
-                val attributes = node.attributes
-                val sortedAttributes = TreeMap<String, String>(AttributeComparator())
-                for (i in 0 until attributes.length) {
-                    val item = attributes.item(i)
-                    // Ignore xmlns for non-root elements
-                    if (node.parentNode != null
-                            && node.parentNode.nodeType != Node.DOCUMENT_NODE
-                            && item.nodeName == "xmlns")
+
+                // Ignore xmlns for non-root elements
+                val skipXmlns = node.parentNode != null && node.parentNode.nodeType != Node.DOCUMENT_NODE
+
+                val attributes = startAttributes()
+                val nodeAttributes = node.attributes
+                for (i in 0 until nodeAttributes.length) {
+                    val item = nodeAttributes.item(i)
+                    if (skipXmlns && item.nodeName == "xmlns")
                         continue
 
-                    sortedAttributes[item.nodeName] = item.nodeValue
+                    attributes.add(item.nodeName, item.nodeValue)
                 }
 
-                if (displayAttributesOnSeparateLine) {
-                    writeAttributesOnSeparateLine(writer, beginStr, sortedAttributes)
-                } else {
-                    writeAttributes(writer, beginStr, sortedAttributes)
-                }
+                writeStartTag(writer, depth, name, attributes)
 
                 // recurse on each child
                 val children = node.childNodes
                 if (children != null && children.length > 0) {
                     // close the open tag
-                    writer.write(">")
-                    if (children.length > 0) {
-                        val child = children.item(0)
-                        if (child.nodeType != Node.TEXT_NODE || child.nodeValue.trim { it <= ' ' }.length == 0)
-                            writer.write(lineSeparator)
-                    }
+                    writer.write('>'.toInt())
+                    if (!isNotBlankText(children.item(0)))
+                        writer.write(lineSeparator)
 
                     for (i in 0 until children.length)
-                        serializeNode(children.item(i), writer, indentLevel + indent)
-
-                    if (children.length > 0) {
-                        val child = children.item(children.length - 1)
-                        if (child.nodeType != Node.TEXT_NODE || child.nodeValue.trim { it <= ' ' }.length == 0)
-                            writer.write(indentLevel)
-                    }
-                    writer.write("</$name>")
+                        serializeNode(children.item(i), writer, depth + 1)
+
+                    if (!isNotBlankText(children.item(children.length - 1)))
+                        writeIndent(writer, depth)
+                    writer.write("</")
+                    writer.write(name)
+                    writer.write('>'.toInt())
                 } else {
                     //Close this element without making a frivolous full close tag
                     writer.write("/>")
                 }
                 writer.write(lineSeparator)
             }
-            Node.TEXT_NODE -> {
-                val value = node.nodeValue.trim { it <= ' ' }
-                if (value.length > 0)
-                    printWithContentEscape(writer, value)
-            }
+            Node.TEXT_NODE -> writeText(writer, node.nodeValue)
             Node.CDATA_SECTION_NODE -> {
-                writer.write("$indentLevel<![CDATA[")
+                writeIndent(writer, depth)
+                writer.write("<![CDATA[")
                 writer.write(node.nodeValue)
-                writer.write("]]>$lineSeparator")
-            }
-            Node.COMMENT_NODE -> {
-                writer.write(indentLevel + "<!--" + node.nodeValue + "-->")
+                writer.write("]]>")
                 writer.write(lineSeparator)
             }
-            Node.PROCESSING_INSTRUCTION_NODE -> {
-                writer.write("<?" + node.nodeName + " " + node.nodeValue
-                        + "?>")
-                writer.write(lineSeparator)
+            Node.COMMENT_NODE -> writeComment(writer, depth, node.nodeValue)
+            Node.PROCESSING_INSTRUCTION_NODE -> writeProcessingInstruction(writer, node.nodeName, node.nodeValue)
+            Node.ENTITY_REFERENCE_NODE -> {
+                writer.write('&'.toInt())
+                writer.write(node.nodeName)
+                writer.write(';'.toInt())
             }
-            Node.ENTITY_REFERENCE_NODE -> writer.write("&" + node.nodeName + ";")
             Node.DOCUMENT_TYPE_NODE -> {
                 val docType = node as DocumentType
                 val publicId = docType.publicId
                 val systemId = docType.systemId
                 val internalSubset = docType.internalSubset
-                writer.write("<!DOCTYPE " + docType.name)
-                if (publicId != null)
-                    writer.write(" PUBLIC \"$publicId\" ")
-                else
+                writer.write("<!DOCTYPE ")
+                writer.write(docType.name)
+                if (publicId != null) {
+                    writer.write(" PUBLIC \"")
+                    writer.write(publicId)
+                    writer.write("\" ")
+                } else
                     writer.write(" SYSTEM ")
-                writer.write("\"" + systemId + "\"")
-                if (internalSubset != null)
-                    writer.write(" [$internalSubset]")
+                writer.write("\"$systemId\"")
+                if (internalSubset != null) {
+                    writer.write(" [")
+                    writer.write(internalSubset)
+                    writer.write("]")
+                }
                 writer.write(">")
                 writer.write(lineSeparator)
             }
         }
     }
 
+    /*
+     * Writers of separate node parts. They are also used by [StreamingXmlEditor],
+     * so streamed documents are formatted exactly as serialized ones.
+     */
+
+    internal val newLine: String
+        get() = lineSeparator
+
+    /**
+     * Returns the cleared attribute buffer. The buffer is shared, so it must be written before the next element is started.
+     */
+    internal fun startAttributes(): AttributeBuffer = attributes.apply { clear() }
+
+    @Throws(IOException::class)
+    internal fun writeIndent(writer: Writer, depth: Int) {
+        writer.write(indent(depth))
+    }
+
+    @Throws(IOException::class)
+    internal fun writeDeclaration(writer: Writer, xmlVersion: String, standalone: Boolean) {
+        writer.write("<?xml version=\"")
+        writer.write(xmlVersion)
+        writer.write("\" encoding=\"UTF-8\" standalone=\"")
+        if (standalone)
+            writer.write("yes")
+        else
+            writer.write("no")
+        writer.write("\"?>")
+        writer.write(lineSeparator)
+    }
+
+    /**
+     * Writes element name and attributes, but doesn't close the tag.
+     */
+    @Throws(IOException::class)
+    internal fun writeStartTag(writer: Writer, depth: Int, name: String, sortedAttributes: AttributeBuffer) {
+        val indent = indent(depth)
+        writer.write(indent)
+        writer.write('<'.toInt())
+        writer.write(name)
+
+        sortedAttributes.sort()
+
+        val beginLength = indent.length + 1 + name.length
+        if (displayAttributesOnSeparateLine) {
+            writeAttributesOnSeparateLine(writer, beginLength, sortedAttributes)
+        } else {
+            writeAttributes(writer, beginLength, sortedAttributes)
+        }
+    }
+
     @Throws(IOException::class)
-    private fun writeAttributes(writer: Writer, beginLine: String, sortedAttributes: TreeMap<String, String>) {
-        if (sortedAttributes.isEmpty()) {
+    internal fun writeText(writer: Writer, text: String) {
+        var start = 0
+        var end = text.length
+        while (start < end && text[start] <= ' ')
+            start++
+        while (start < end && text[end - 1] <= ' ')
+            end--
+
+        if (start < end)
+            writer.write(XML_CONTENT_ESCAPER.escape(if (start == 0 && end == text.length) text else text.substring(start, end)))
+    }
+
+    @Throws(IOException::class)
+    internal fun writeComment(writer: Writer, depth: Int, comment: String) {
+        writeIndent(writer, depth)
+        writer.write("<!--")
+        writer.write(comment)
+        writer.write("-->")
+        writer.write(lineSeparator)
+    }
+
+    @Throws(IOException::class)
+    internal fun writeProcessingInstruction(writer: Writer, target: String, data: String) {
+        writer.write("<?")
+        writer.write(target)
+        writer.write(' '.toInt())
+        writer.write(data)
+        writer.write("?>")
+        writer.write(lineSeparator)
+    }
+
+    @Throws(IOException::class)
+    private fun writeAttributes(writer: Writer, beginLength: Int, sortedAttributes: AttributeBuffer) {
+        if (sortedAttributes.size == 0) {
             return
         }
         if (maxLengthOfString > 0) {
-            var fullLine = beginLine
+            var lineLength = beginLength
             var isAttrInLine = false
-            val attributeSeparator = lineSeparator + Strings.repeat(" ", beginLine.length + 1)
-            for ((key, value) in sortedAttributes) {
-                val attr = createAttr(key, value)
-                fullLine += " $attr"
-                if (!isAttrInLine || fullLine.length <= maxLengthOfString) {
-                    writer.write(" $attr")
+            val attributeSeparator = attributeSeparator(beginLength)
+            for (i in 0 until sortedAttributes.size) {
+                val name = sortedAttributes.name(i)
+                val value = XML_ATTRIBUTE_ESCAPER.escape(sortedAttributes.value(i))
+                val attrLength = name.length + value.length + 3
+
+                lineLength += attrLength + 1
+                if (!isAttrInLine || lineLength <= maxLengthOfString) {
+                    writer.write(' '.toInt())
                     isAttrInLine = true
                 } else {
                     writer.write(attributeSeparator)
-                    writer.write(attr)
-                    fullLine = attributeSeparator + attr
+                    lineLength = attributeSeparator.length + attrLength
                 }
+                writeAttribute(writer, name, value)
             }
         } else {
-            for ((key, value) in sortedAttributes) {
-                val attr = createAttr(key, value)
-                writer.write(" $attr")
+            for (i in 0 until sortedAttributes.size) {
+                writer.write(' '.toInt())
+                writeAttribute(writer, sortedAttributes.name(i), XML_ATTRIBUTE_ESCAPER.escape(sortedAttributes.value(i)))
             }
         }
     }
 
     @Throws(IOException::class)
-    private fun writeAttributesOnSeparateLine(writer: Writer, beginLine: String, sortedAttributes: TreeMap<String, String>) {
-        if (sortedAttributes.size > 0) {
-            val firstKey = sortedAttributes.firstKey()
-            var attributeStr = " $firstKey=\""
-            writer.write(attributeStr)
-            printWithAttributeEscape(writer, sortedAttributes[firstKey])
-            writer.write("\"")
-
-            val attributeSeparator = lineSeparator + Strings.repeat(" ", beginLine.length + 1)
-            for ((key, value) in sortedAttributes) {
-                if (firstKey != key) {
-                    attributeStr = "$attributeSeparator$key=\""
-                    writer.write(attributeStr)
-                    printWithAttributeEscape(writer, value)
-                    writer.write("\"")
-                }
+    private fun writeAttributesOnSeparateLine(writer: Writer, beginLength: Int, sortedAttributes: AttributeBuffer) {
+        if (sortedAttributes.size == 0)
+            return
+
+        writer.write(' '.toInt())
+        writeAttribute(writer, sortedAttributes.name(0), XML_ATTRIBUTE_ESCAPER.escape(sortedAttributes.value(0)))
+
+        if (sortedAttributes.size > 1) {
+            val attributeSeparator = attributeSeparator(beginLength)
+            for (i in 1 until sortedAttributes.size) {
+                writer.write(attributeSeparator)
+                writeAttribute(writer, sortedAttributes.name(i), XML_ATTRIBUTE_ESCAPER.escape(sortedAttributes.value(i)))
             }
         }
     }
 
-    private fun createAttr(name: String, value: String): String {
-        return name + "=\"" + xmlAttributeEscape(value) + "\""
+    @Throws(IOException::class)
+    private fun writeAttribute(writer: Writer, name: String, escapedValue: String) {
+        writer.write(name)
+        writer.write("=\"")
+        writer.write(escapedValue)
+        writer.write('"'.toInt())
     }
 
-    private fun xmlAttributeEscape(value: String?): String {
-        return if (value == null) {
-            ""
-        } else XML_ATTRIBUTE_ESCAPER.escape(value)
-    }
+    private fun isNotBlankText(node: Node): Boolean {
+        if (node.nodeType != Node.TEXT_NODE)
+            return false
 
-    @Throws(IOException::class)
-    private fun printWithContentEscape(writer: Writer, s: String?) {
-        if (s == null) {
-            return
+        val value = node.nodeValue
+        for (i in 0 until value.length) {
+            if (value[i] > ' ')
+                return true
         }
-        writer.write(XML_CONTENT_ESCAPER.escape(s))
+        return false
     }
 
-    @Throws(IOException::class)
-    private fun printWithAttributeEscape(writer: Writer, s: String?) {
-        if (s == null) {
-            return
+    private fun indent(depth: Int): String {
+        while (indents.size <= depth) {
+            indents.add(indents.last() + " ".repeat(numIndentSpaces))
         }
-        writer.write(XML_ATTRIBUTE_ESCAPER.escape(s))
+        return indents[depth]
+    }
+
+    /**
+     * Line separator followed by spaces, that align an attribute with the first attribute of the element.
+     */
+    private fun attributeSeparator(beginLength: Int): String = attributeSeparators.getOrPut(beginLength) {
+        lineSeparator + " ".repeat(beginLength + 1)
     }
 
-    private class AttributeComparator : Comparator<String> {
+    /**
+     * Attributes of the element being written, ordered by [AttributeBuffer.sort] with well-known attributes first.
+     */
+    internal class AttributeBuffer {
+        private var names: Array<String?> = arrayOfNulls(8)
+
+        private var values: Array<String?> = arrayOfNulls(8)
 
-        private fun getWeight(a: String): Int {
-            val weight = w[a]
-            return weight ?: 1000
+        var size: Int = 0
+            private set
+
+        fun name(index: Int): String = names[index]!!
+
+        fun value(index: Int): String = values[index] ?: ""
+
+        /**
+         * Adds attribute or replaces the value of the attribute with the same name.
+         */
+        fun add(name: String, value: String?) {
+            for (i in 0 until size) {
+                if (names[i] == name) {
+                    values[i] = value
+                    return
+                }
+            }
+
+            if (size == names.size) {
+                names = names.copyOf(size * 2)
+                values = values.copyOf(size * 2)
+            }
+            names[size] = name
+            values[size] = value
+            size++
         }
 
-        override fun compare(a1: String, a2: String): Int {
+        fun clear() {
+            for (i in 0 until size) {
+                names[i] = null
+                values[i] = null
+            }
+            size = 0
+        }
+
+        /**
+         * Insertion sort, as elements seldom have more than several attributes.
+         */
+        fun sort() {
+            for (i in 1 until size) {
+                val name = names[i]!!
+                val value = values[i]
+                var j = i - 1
+                while (j >= 0 && compare(names[j]!!, name) > 0) {
+                    names[j + 1] = names[j]
+                    values[j + 1] = values[j]
+                    j--
+                }
+                names[j + 1] = name
+                values[j + 1] = value
+            }
+        }
+
+        private fun compare(a1: String, a2: String): Int {
             val w1 = getWeight(a1)
             val w2 = getWeight(a2)
 
             return if (w1 == w2) a1.compareTo(a2) else w1 - w2
         }
 
-        companion object {
-
-            private val w = HashMap<String, Int>()
-
-            init {
-                w["xmlns"] = 10
-                w["xmlns:xsi"] = 20
-                w["xsi:schemaLocation"] = 30
-                w["id"] = 40
-            }
+        private fun getWeight(a: String): Int = when (a) {
+            "xmlns" -> 10
+            "xmlns:xsi" -> 20
+            "xsi:schemaLocation" -> 30
+            "id" -> 40
+            else -> 1000
         }
     }
 
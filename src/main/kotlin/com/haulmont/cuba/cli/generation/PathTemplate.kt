@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import com.haulmont.cuba.cli.commands.CommandExecutionException
+import java.io.File
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.lang.reflect.Method
+import java.lang.reflect.Modifier
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Template file path, split into literal parts and variable expressions.
+ * Records like ```${a.b.c}``` are substituted with the variable value, and records like ```$[a.b.c]``` are substituted
+ * with the variable value, in which dots are replaced with the file separator.
+ *
+ * Paths are parsed once and kept for the JVM lifetime, as the number of template files is limited.
+ */
+internal class PathTemplate private constructor(private val parts: List<Part>) {
+
+    fun apply(bindings: Map<String, Any>): String {
+        if (parts.size == 1)
+            return parts[0].render(bindings)
+
+        return buildString {
+            parts.forEach { append(it.render(bindings)) }
+        }
+    }
+
+    private interface Part {
+        fun render(bindings: Map<String, Any>): String
+    }
+
+    private class Literal(val text: String) : Part {
+        override fun render(bindings: Map<String, Any>): String = text
+    }
+
+    private class Variable(val expression: PathExpression, val isPackage: Boolean) : Part {
+        override fun render(bindings: Map<String, Any>): String = expression.evaluate(bindings).toString().let {
+            if (isPackage) it.replace('.', File.separatorChar) else it
+        }
+    }
+
+    companion object {
+        private val expressionPattern: Regex = Regex(
+                "\\$\\{([a-zA-Z][0-9a-zA-Z]*(?:\\.[a-zA-Z][0-9a-zA-Z]*)*)}|\\$\\[([a-zA-Z][0-9a-zA-Z]*(?:\\.[a-zA-Z][0-9a-zA-Z]*)*)]")
+
+        private val templates: MutableMap<String, PathTemplate> = ConcurrentHashMap()
+
+        fun compile(path: String): PathTemplate = templates.computeIfAbsent(path, ::parse)
+
+        private fun parse(path: String): PathTemplate {
+            val parts = mutableListOf<Part>()
+            var position = 0
+
+            expressionPattern.findAll(path).forEach { match ->
+                if (match.range.start > position) {
+                    parts += Literal(path.substring(position, match.range.start))
+                }
+
+                val pathExpression = match.groups[1]?.value
+                parts += if (pathExpression != null) {
+                    Variable(PathExpression.compile(pathExpression), false)
+                } else {
+                    Variable(PathExpression.compile(match.groupValues[2]), true)
+                }
+
+                position = match.range.endInclusive + 1
+            }
+
+            if (position < path.length || parts.isEmpty()) {
+                parts += Literal(path.substring(position))
+            }
+
+            return PathTemplate(parts)
+        }
+    }
+}
+
+/**
+ * Dot separated chain of names, that is evaluated against the bindings map. Every name is resolved either as a map key,
+ * or as a public property getter of the current object. Getters are resolved once per class and name
+ * and invoked through method handles of `(Object)Object` type.
+ */
+internal class PathExpression private constructor(private val names: Array<String>) {
+
+    fun evaluate(bindings: Map<String, Any>): Any = names.fold(bindings as Any) { obj, name ->
+        getChild(obj, name)
+    }
+
+    private fun getChild(obj: Any, name: String): Any = when (obj) {
+        is Map<*, *> -> {
+            if (name in obj) {
+                obj[name]!!
+            } else throw CommandExecutionException("Path variable $name doesn't exists")
+        }
+        else -> getters.get(obj.javaClass)
+                .computeIfAbsent(name) { findGetter(obj.javaClass, it) }
+                .invokeExact(obj)
+                ?: throw CommandExecutionException("Path variable $name is null")
+    }
+
+    companion object {
+        private val expressions: MutableMap<String, PathExpression> = ConcurrentHashMap()
+
+        private val getters = object : ClassValue<MutableMap<String, MethodHandle>>() {
+            override fun computeValue(type: Class<*>): MutableMap<String, MethodHandle> = ConcurrentHashMap()
+        }
+
+        fun compile(expression: String): PathExpression = expressions.computeIfAbsent(expression) {
+            PathExpression(it.split('.').toTypedArray())
+        }
+
+        private fun findGetter(clazz: Class<*>, name: String): MethodHandle {
+            val capitalized = name.capitalize()
+
+            val method = listOf("get$capitalized", "is$capitalized", name)
+                    .asSequence()
+                    .mapNotNull { findPublicMethod(clazz, it) }
+                    .firstOrNull()
+                    ?: throw CommandExecutionException("Path variable $name doesn't exists")
+
+            val handle = try {
+                MethodHandles.lookup().unreflect(method)
+            } catch (e: IllegalAccessException) {
+                method.isAccessible = true
+                MethodHandles.lookup().unreflect(method)
+            }
+
+            return handle.asType(MethodType.methodType(Any::class.java, Any::class.java))
+        }
+
+        private fun findPublicMethod(clazz: Class<*>, name: String): Method? = try {
+            clazz.getMethod(name).takeIf {
+                !Modifier.isStatic(it.modifiers) && it.returnType != Void.TYPE
+            }
+        } catch (e: NoSuchMethodException) {
+            null
+        }
+    }
+}
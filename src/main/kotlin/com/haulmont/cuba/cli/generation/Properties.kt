@@ -17,58 +17,49 @@
 package com.haulmont.cuba.cli.generation
 
 import com.haulmont.cuba.cli.PrintHelper
-import com.haulmont.cuba.cli.generation.properties.MessagesWriter
+import com.haulmont.cuba.cli.generation.properties.PropertiesEditor
 import com.haulmont.cuba.cli.kodein
-import org.apache.commons.configuration.PropertiesConfiguration
 import org.kodein.di.generic.instance
-import java.io.Writer
-import java.nio.file.Files
 import java.nio.file.Path
 
-class Properties private constructor(private val propertiesConfiguration: PropertiesConfiguration, private val created: Boolean) {
+/**
+ * Properties file, which modifications are saved by [PropertiesEditor], so only changed lines are written.
+ */
+class Properties private constructor(private val editor: PropertiesEditor, private val created: Boolean) {
     operator fun set(key: String, value: String) {
-        propertiesConfiguration.setProperty(key, value)
+        editor[key] = value
     }
 
     fun update(key: String, update: (String?) -> String) {
-        propertiesConfiguration.setProperty(key, update(propertiesConfiguration.getString(key)))
+        editor[key] = update(editor[key])
     }
 
-    fun remove(key:String) = propertiesConfiguration.clearProperty(key)
+    fun remove(key:String) = editor.remove(key)
 
-    operator fun get(key: String): String? = propertiesConfiguration.getString(key)
+    operator fun get(key: String): String? = editor[key]
 
+    /**
+     * Saves properties, unless the file already has the same content.
+     */
     fun save() {
-        propertiesConfiguration.save()
+        val path = editor.path
 
-        val path = propertiesConfiguration.file.toPath()
-        if (created) {
-            printHelper.fileCreated(path)
-        } else
-            printHelper.fileModified(path)
+        if (!editor.save()) {
+            printHelper.fileUnchanged(path)
+        } else {
+            printHelper.fileWritten(path, created)
+        }
     }
 
     companion object {
         private val printHelper: PrintHelper by kodein.instance()
 
         operator fun invoke(path: Path): Properties {
-            val properties = PropertiesConfiguration().apply {
-                encoding = "UTF-8"
-                file = path.toFile()
-                ioFactory = object : PropertiesConfiguration.DefaultIOFactory() {
-                    override fun createPropertiesWriter(out: Writer, delimiter: Char): PropertiesConfiguration.PropertiesWriter {
-                        return MessagesWriter(out, delimiter)
-                    }
-                }
-
-                if (file.exists()) {
-                    load()
-                }
-            }
+            val editor = PropertiesEditor.open(path)
 
-            return Properties(properties, !Files.exists(path))
+            return Properties(editor, !editor.exists)
         }
 
         fun modify(path: Path, block: Properties.() -> Unit) = Properties(path).apply(block).save()
     }
-}
\ No newline at end of file
+}
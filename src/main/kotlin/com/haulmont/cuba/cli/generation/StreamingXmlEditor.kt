@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.w3c.dom.Element
+import java.io.BufferedWriter
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * Appending of a new element to the first element, found by [parentPath] of child tag names starting from the root element.
+ * Missing elements of the path are created.
+ */
+class XmlAppend(val parentPath: List<String>, val tagName: String, val setup: Element.() -> Unit) {
+    fun applyTo(root: Element) {
+        val parent = parentPath.fold(root) { element, name ->
+            element.findFirstChild(name) ?: element.appendChild(name)
+        }
+        parent.appendChild(tagName, setup)
+    }
+
+    /**
+     * Returns true, if the appended element, or any of its descendants, is matched by [query].
+     */
+    fun creates(query: XmlElementQuery): Boolean {
+        val document = newDocument()
+        val container = document.createElement("container")
+        document.appendChild(container)
+
+        return query.findIn(container.appendChild(tagName, setup))
+    }
+}
+
+/**
+ * Element with [tagName], that has all [attributes] and, if [text] is not null, the same trimmed text content.
+ */
+class XmlElementQuery(val tagName: String, val attributes: Map<String, String> = emptyMap(), val text: String? = null) {
+    fun matches(element: Element): Boolean =
+            element.tagName == tagName
+                    && attributes.all { (name, value) -> element.hasAttribute(name) && element.getAttribute(name) == value }
+                    && (text == null || element.textContent.trim() == text)
+
+    /**
+     * Returns true, if [root] or any of its descendants matches the query.
+     */
+    fun findIn(root: Element): Boolean {
+        if (matches(root))
+            return true
+
+        val elements = root.getElementsByTagName(tagName)
+        return (0 until elements.length).any { matches(elements.item(it) as Element) }
+    }
+}
+
+/**
+ * Applies [XmlAppend]s to xml files without loading them into memory.
+ *
+ * The file is copied event by event with StAX, and new elements are inserted when the parent element end is reached.
+ * Every node is written by [DOMSerializer] node writers, so the result is the same as if the file was parsed,
+ * modified and saved by [save].
+ *
+ * Documents with DTD are not supported, as their entities and doctype can't be reproduced exactly.
+ */
+internal class StreamingXmlEditor(private val serializer: DOMSerializer = DOMSerializer(numIndentSpaces = 4)) {
+
+    /**
+     * Writes [source] with all [appends] applied to a temporary file in the same directory.
+     *
+     * @return the temporary file, or null, if the document isn't supported and should be modified through DOM
+     */
+    fun apply(source: Path, appends: List<XmlAppend>): Path? {
+        var current = source
+        try {
+            for ((parentPath, group) in appends.groupBy { it.parentPath }) {
+                val target = Files.createTempFile(source.toAbsolutePath().parent, source.fileName.toString(), ".tmp")
+                try {
+                    copyWithAppends(current, target, parentPath, group)
+                } catch (e: Exception) {
+                    Files.deleteIfExists(target)
+                    throw e
+                }
+                if (current != source) {
+                    Files.delete(current)
+                }
+                current = target
+            }
+        } catch (e: Exception) {
+            if (current != source) {
+                Files.deleteIfExists(current)
+            }
+//            documents, that are not namespace well-formed, still may be modified through DOM
+            if (e is UnsupportedXmlException || e is XMLStreamException)
+                return null
+            throw e
+        }
+        return current
+    }
+
+    /**
+     * Checks, if [source] has an element matched by [query]. The file is scanned without building the document.
+     *
+     * @return null, if the document isn't supported and should be checked through DOM
+     */
+    fun contains(source: Path, query: XmlElementQuery): Boolean? = try {
+        Files.newInputStream(source).use { input ->
+            val reader = inputFactory.createXMLStreamReader(input)
+            try {
+                scan(reader, query)
+            } finally {
+                reader.close()
+            }
+        }
+    } catch (e: UnsupportedXmlException) {
+        null
+    } catch (e: XMLStreamException) {
+        null
+    }
+
+    private fun scan(reader: XMLStreamReader, query: XmlElementQuery): Boolean {
+        val text = StringBuilder()
+        var depth = 0
+//        depth of the element, which text is collected, or 0, if there is no such element
+        var candidateDepth = 0
+
+        while (reader.hasNext()) {
+            when (reader.next()) {
+                XMLStreamConstants.START_ELEMENT -> {
+                    depth++
+                    if (candidateDepth == 0 && matchesStart(reader, query)) {
+                        if (query.text == null)
+                            return true
+                        candidateDepth = depth
+                        text.setLength(0)
+                    }
+                }
+                XMLStreamConstants.END_ELEMENT -> {
+                    if (depth == candidateDepth) {
+                        if (text.toString().trim() == query.text)
+                            return true
+                        candidateDepth = 0
+                    }
+                    depth--
+                }
+                XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    if (candidateDepth != 0) text.append(reader.text)
+                }
+                XMLStreamConstants.DTD, XMLStreamConstants.ENTITY_REFERENCE -> throw UnsupportedXmlException()
+            }
+        }
+        return false
+    }
+
+    private fun matchesStart(reader: XMLStreamReader, query: XmlElementQuery): Boolean {
+        val prefix = reader.prefix
+        val name = if (prefix.isNullOrEmpty()) reader.localName else "$prefix:${reader.localName}"
+        if (name != query.tagName)
+            return false
+
+        return query.attributes.all { (attributeName, value) ->
+            (0 until reader.attributeCount).any { i ->
+                val attributePrefix = reader.getAttributePrefix(i)
+                val qualifiedName = if (attributePrefix.isNullOrEmpty()) reader.getAttributeLocalName(i)
+                else "$attributePrefix:${reader.getAttributeLocalName(i)}"
+
+                qualifiedName == attributeName && reader.getAttributeValue(i) == value
+            }
+        }
+    }
+
+    private fun copyWithAppends(source: Path, target: Path, parentPath: List<String>, appends: List<XmlAppend>) {
+        Files.newInputStream(source).use { input ->
+            val reader = inputFactory.createXMLStreamReader(input)
+            try {
+                BufferedWriter(OutputStreamWriter(Files.newOutputStream(target), "UTF8")).use { writer ->
+                    Copier(reader, writer, parentPath, appends).copy()
+                }
+            } finally {
+                reader.close()
+            }
+        }
+    }
+
+    private inner class Copier(
+            private val reader: XMLStreamReader,
+            private val writer: Writer,
+            private val parentPath: List<String>,
+            private val appends: List<XmlAppend>
+    ) {
+        private val frames: Deque<Frame> = ArrayDeque()
+
+        private val text = StringBuilder()
+
+        /**
+         * Number of open elements, that match [parentPath], including the root element.
+         */
+        private var matchedLevel = 0
+
+        private var inserted = false
+
+        fun copy() {
+            serializer.writeDeclaration(
+                    writer,
+                    reader.version ?: "1.0",
+                    reader.standaloneSet() && reader.isStandalone)
+
+            while (reader.hasNext()) {
+                when (reader.next()) {
+                    XMLStreamConstants.START_ELEMENT -> startElement()
+                    XMLStreamConstants.END_ELEMENT -> endElement()
+                    XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (frames.isNotEmpty()) text.append(reader.text)
+                    }
+                    XMLStreamConstants.COMMENT -> {
+                        serializer.writeComment(writer, childDepth(), reader.text)
+                    }
+                    XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        childDepth()
+                        serializer.writeProcessingInstruction(writer, reader.piTarget, reader.piData ?: "")
+                    }
+                    XMLStreamConstants.DTD, XMLStreamConstants.ENTITY_REFERENCE -> throw UnsupportedXmlException()
+                }
+            }
+        }
+
+        private fun startElement() {
+            val parent = frames.peek()
+            val depth = childDepth()
+
+            val name = qualifiedName(reader.prefix, reader.localName)
+
+            val attributes = serializer.startAttributes()
+            for (i in 0 until reader.namespaceCount) {
+                val prefix = reader.getNamespacePrefix(i)
+                val attributeName = if (prefix.isNullOrEmpty()) "xmlns" else "xmlns:$prefix"
+                // Ignore xmlns for non-root elements
+                if (parent != null && attributeName == "xmlns")
+                    continue
+                attributes.add(attributeName, reader.getNamespaceURI(i) ?: "")
+            }
+            for (i in 0 until reader.attributeCount) {
+                attributes.add(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i))
+            }
+
+            serializer.writeStartTag(writer, depth, name, attributes)
+
+            if (!inserted) {
+                if (parent == null) {
+                    matchedLevel = 1
+                } else if (frames.size == matchedLevel && matchedLevel <= parentPath.size && parentPath[matchedLevel - 1] == name) {
+                    matchedLevel++
+                }
+            }
+
+            frames.push(Frame(name, depth))
+        }
+
+        private fun endElement() {
+            flushText()
+
+            if (!inserted && frames.size == matchedLevel) {
+                insert(frames.peek(), parentPath.drop(matchedLevel - 1))
+                inserted = true
+            }
+
+            val frame = frames.pop()
+            if (!frame.hasChildren) {
+                writer.write("/>")
+            } else {
+                if (!frame.lastChildIsText)
+                    serializer.writeIndent(writer, frame.depth)
+                writer.write("</${frame.name}>")
+            }
+            writer.write(serializer.newLine)
+        }
+
+        /**
+         * Writes new elements as the last children of [parent], creating [missingPath] elements first.
+         */
+        private fun insert(parent: Frame, missingPath: List<String>) {
+            val document = newDocument()
+            val container = document.createElement(parent.name)
+            document.appendChild(container)
+
+            val newParent = missingPath.fold(container) { element, name -> element.appendChild(name) }
+            appends.forEach { newParent.appendChild(it.tagName, it.setup) }
+
+            container.getChildElements().forEach {
+                childArrived(parent, false)
+                serializer.serializeNode(it, writer, parent.depth + 1)
+            }
+        }
+
+        /**
+         * Notifies current element about non text child and returns the child depth.
+         */
+        private fun childDepth(): Int {
+            flushText()
+
+            val parent = frames.peek() ?: return 0
+            childArrived(parent, false)
+            return parent.depth + 1
+        }
+
+        private fun flushText() {
+            if (text.isEmpty())
+                return
+
+            val value = text.toString()
+            text.setLength(0)
+
+            childArrived(frames.peek(), value.trim { it <= ' ' }.isNotEmpty())
+            serializer.writeText(writer, value)
+        }
+
+        /**
+         * Closes the start tag of the element before its first child, the same way as [DOMSerializer] does.
+         */
+        private fun childArrived(frame: Frame, isNotBlankText: Boolean) {
+            if (!frame.hasChildren) {
+                writer.write(">")
+                if (!isNotBlankText)
+                    writer.write(serializer.newLine)
+                frame.hasChildren = true
+            }
+            frame.lastChildIsText = isNotBlankText
+        }
+
+        private fun qualifiedName(prefix: String?, localName: String): String =
+                if (prefix.isNullOrEmpty()) localName else "$prefix:$localName"
+    }
+
+    private class Frame(val name: String, val depth: Int) {
+        var hasChildren: Boolean = false
+
+        var lastChildIsText: Boolean = false
+    }
+
+    private class UnsupportedXmlException : Exception()
+
+    companion object {
+        /**
+         * Files smaller than this size are modified through DOM.
+         */
+        const val STREAMING_THRESHOLD: Long = 256 * 1024
+
+        private val inputFactory: XMLInputFactory = XMLInputFactory.newInstance().apply {
+            setProperty(XMLInputFactory.IS_COALESCING, true)
+            setProperty(XMLInputFactory.SUPPORT_DTD, false)
+            setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+        }
+    }
+}
@@ -17,18 +17,18 @@
 package com.haulmont.cuba.cli.generation
 
 import com.haulmont.cuba.cli.*
-import com.haulmont.cuba.cli.commands.CommandExecutionException
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersion
 import org.apache.velocity.VelocityContext
 import org.apache.velocity.app.Velocity
 import org.kodein.di.generic.instance
 import java.io.ByteArrayOutputStream
-import java.io.File
 import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
-import kotlin.reflect.full.memberProperties
+import java.util.stream.Collectors
 
 /**
  * TemplateProcessor is used to generate project files from templates.
@@ -46,15 +46,16 @@ import kotlin.reflect.full.memberProperties
  *
  * Packages of all your models should be opened in order to Apache Velocity may access them through reflexion.
  *
+ * With `parallel` flag files are rendered and written concurrently, and velocity variables, set in one template,
+ * are not visible in other templates. Files are processed sequentially by default.
+ *
+ * Existing files, whose content would not change, are not rewritten and are reported as unchanged.
+ *
  */
 class TemplateProcessor(templateBasePath: Path, private val bindings: Map<String, Any>, version: PlatformVersion = PlatformVersion.findVersion()) {
 
     private val printHelper: PrintHelper by kodein.instance()
 
-    private val pathExpressionPattern: Regex = Regex("\\$\\{[a-zA-Z][0-9a-zA-Z]*(\\.[a-zA-Z][0-9a-zA-Z]*)*}")
-    private val packageExpressionPattern: Regex = Regex("\\$\\[[a-zA-Z][0-9a-zA-Z]*(\\.[a-zA-Z][0-9a-zA-Z]*)*]")
-
-    private val variablePartPattern: Regex = Regex("[a-zA-Z][0-9a-zA-Z]*")
     private val velocityContext: VelocityContext
 
     private val velocityHelper: VelocityHelper = VelocityHelper()
@@ -67,105 +68,142 @@ class TemplateProcessor(templateBasePath: Path, private val bindings: Map<String
         }
     }
 
-    private fun process(from: Path, to: Path, withTransform: Boolean, filter: PathFilter) {
+    private fun process(from: Path, to: Path, withTransform: Boolean, parallel: Boolean, filter: PathFilter) {
         val targetAbsolutePath = to.toAbsolutePath()
 
         val baseTemplatePath = templatePath.toAbsolutePath().toString()
         val targetDirectoryPath = targetAbsolutePath.toString()
 
-        from.walk()
+        val files = from.walk()
                 .filter { !isTemplateMetadata(it) }
                 .filter { Files.isRegularFile(it) }
                 .filter(filter)
-                .forEach { inputPath ->
-                    val outputFile = inputPath.toAbsolutePath().toString()
-                            .replace(baseTemplatePath, targetDirectoryPath)
-                            .let { applyPathTransform(it, bindings) }
-                            .let { Paths.get(it) }
+                .map { inputPath ->
+                    val inputAbsolutePath = inputPath.toAbsolutePath().toString()
 
-                    ensureFolders(outputFile)
-
-                    if (withTransform) {
-                        transformInternal(inputPath, outputFile, velocityContext)
+                    val outputFile = if (inputAbsolutePath.startsWith(baseTemplatePath)) {
+                        val templateRelativePath = inputAbsolutePath.substring(baseTemplatePath.length)
+                        targetDirectoryPath + PathTemplate.compile(templateRelativePath).apply(bindings)
                     } else {
-                        copyInternal(inputPath, outputFile)
+                        inputAbsolutePath.replace(baseTemplatePath, targetDirectoryPath)
+                                .let { PathTemplate.compile(it).apply(bindings) }
                     }
+
+                    inputPath to Paths.get(outputFile)
                 }
+
+        files.map { (_, outputFile) -> outputFile.toAbsolutePath().parent }
+                .distinct()
+                .forEach { ensureFolder(it) }
+
+        if (parallel && files.size > 1) {
+            processParallel(files, withTransform)
+        } else {
+            files.forEach { (inputPath, outputFile) ->
+                val written = if (withTransform) {
+                    transformInternal(inputPath, outputFile, velocityContext)
+                } else {
+                    copyInternal(inputPath, outputFile)
+                }
+                reportFile(outputFile, written)
+            }
+        }
+    }
+
+    /**
+     * Renders and writes files on the common fork-join pool. Every file is rendered with its own velocity context,
+     * that delegates to the shared one, so variables set by one template are not visible to others.
+     * Created files are reported in the template tree walk order, after all of them are written.
+     */
+    private fun processParallel(files: List<Pair<Path, Path>>, withTransform: Boolean) {
+        val written = files.parallelStream().map {
+            val (inputPath, outputFile) = it
+            if (withTransform) {
+                transformInternal(inputPath, outputFile, VelocityContext(velocityContext))
+            } else {
+                copyInternal(inputPath, outputFile)
+            }
+        }.collect(Collectors.toList())
+
+        files.forEachIndexed { i, (_, outputFile) ->
+            reportFile(outputFile, written[i])
+        }
     }
 
     private fun isTemplateMetadata(path: Path): Boolean =
             path.fileName.toString() in listOf("template.xml", "tips.txt")
 
 
-    private fun transformInternal(inputPath: Path, outputFile: Path, vc: VelocityContext) {
-        velocityHelper.generate(inputPath, outputFile, vc)
+    /**
+     * Renders template into the [outputFile]. If the file already exists, it is rewritten only if its content differs.
+     *
+     * @return true, if the file was written
+     */
+    private fun transformInternal(inputPath: Path, outputFile: Path, vc: VelocityContext): Boolean {
+        if (!Files.exists(outputFile)) {
+            velocityHelper.generate(inputPath, outputFile, vc)
+            return true
+        }
+
+        val content = ByteArrayOutputStream().also {
+            velocityHelper.generate(inputPath, OutputStreamWriter(it, StandardCharsets.UTF_8), vc)
+        }.toByteArray()
 
-        printHelper.fileCreated(outputFile)
+        return writeIfChanged(outputFile, content)
     }
 
-    private fun copyInternal(inputPath: Path, outputFile: Path) {
-        Files.copy(inputPath, outputFile)
+    private fun copyInternal(inputPath: Path, outputFile: Path): Boolean {
+        if (hasSameContent(inputPath, outputFile))
+            return false
 
-        printHelper.fileCreated(outputFile)
+        Files.copy(inputPath, outputFile)
+        return true
     }
 
-    private fun ensureFolders(outputFile: Path) {
-        val parent = outputFile.toAbsolutePath().parent
-        if (!Files.exists(parent)) {
-            Files.createDirectories(parent)
+    private fun reportFile(outputFile: Path, written: Boolean) {
+        if (written) {
+            printHelper.fileWritten(outputFile, created = true)
+        } else {
+            printHelper.fileUnchanged(outputFile)
         }
     }
 
-    private fun applyPathTransform(path: String, bindings: Map<String, Any>): String {
-        return pathExpressionPattern.replace(path) {
-            val expression = it.value.substring(2, it.value.lastIndex)
-            parsePathExpression(expression, bindings)
-        }.let {
-            packageExpressionPattern.replace(it) {
-                val expression = it.value.substring(2, it.value.lastIndex)
-                parsePathExpression(expression, bindings).replace('.', File.separatorChar)
-            }
+    private fun ensureFolder(directory: Path) {
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory)
         }
     }
 
-    private fun parsePathExpression(expression: String, bindings: Map<String, Any>): String =
-            variablePartPattern.findAll(expression)
-                    .map {
-                        it.value
-                    }.fold(bindings as Any) { obj, name ->
-                        getChild(obj, name)
-                    }.toString()
-
-
-    private fun getChild(obj: Any, name: String): Any = when (obj) {
-        is Map<*, *> -> {
-            if (name in obj) {
-                obj[name]!!
-            } else throw CommandExecutionException("Path variable $name doesn't exists")
-        }
-        else -> getField(obj, name)
+    fun copy(subPath: Path, to: Path = projectRoot, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, false, false, filter)
     }
 
-    private fun getField(obj: Any, name: String): Any {
-        val kClass = obj::class
-
-        return kClass.memberProperties.first { it.name == name }.getter.call(obj)!!
+    fun copy(subPath: String, to: Path = projectRoot, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, false, false, filter)
     }
 
-    fun copy(subPath: Path, to: Path = projectRoot, filter: PathFilter = { true }) {
-        process(templatePath.resolve(subPath), to, false, filter)
+    fun copy(subPath: Path, to: Path = projectRoot, parallel: Boolean, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, false, parallel, filter)
     }
 
-    fun copy(subPath: String, to: Path = projectRoot, filter: PathFilter = { true }) {
-        process(templatePath.resolve(subPath), to, false, filter)
+    fun copy(subPath: String, to: Path = projectRoot, parallel: Boolean, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, false, parallel, filter)
     }
 
     fun transform(subPath: Path, to: Path = projectRoot, filter: PathFilter = { true }) {
-        process(templatePath.resolve(subPath), to, true, filter)
+        process(templatePath.resolve(subPath), to, true, false, filter)
     }
 
     fun transform(subPath: String, to: Path = projectRoot, filter: PathFilter = { true }) {
-        process(templatePath.resolve(subPath), to, true, filter)
+        process(templatePath.resolve(subPath), to, true, false, filter)
+    }
+
+    fun transform(subPath: Path, to: Path = projectRoot, parallel: Boolean, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, true, parallel, filter)
+    }
+
+    fun transform(subPath: String, to: Path = projectRoot, parallel: Boolean, filter: PathFilter = { true }) {
+        process(templatePath.resolve(subPath), to, true, parallel, filter)
     }
 
     fun transform(subPath: String, to: OutputStream) {
@@ -173,14 +211,16 @@ class TemplateProcessor(templateBasePath: Path, private val bindings: Map<String
 
         check(Files.isRegularFile(filePath)) { "Only file may be saved to output stream" }
 
-        velocityHelper.generate(filePath, velocityContext).let {
-            to.write(it.toByteArray())
-        }
+        velocityHelper.generate(filePath, OutputStreamWriter(to, StandardCharsets.UTF_8).buffered(), velocityContext)
     }
 
-    fun transformToText(subPath: String): String = ByteArrayOutputStream().also {
-        transform(subPath, it)
-    }.toByteArray().let { String(it) }
+    fun transformToText(subPath: String): String {
+        val filePath = templatePath.resolve(subPath)
+
+        check(Files.isRegularFile(filePath)) { "Only file may be transformed to text" }
+
+        return velocityHelper.generate(filePath, velocityContext)
+    }
 
 
     fun copy(subPath: String, to: OutputStream) {
@@ -20,37 +20,43 @@ import org.apache.velocity.Template
 import org.apache.velocity.VelocityContext
 import org.apache.velocity.runtime.RuntimeSingleton
 import java.io.StringWriter
+import java.io.Writer
+import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
 
 class VelocityHelper {
-    fun generate(input: String, templateName: String, vc: VelocityContext): String {
-        val template = Template()
-        val runtimeServices = RuntimeSingleton.getRuntimeServices()
-        template.setRuntimeServices(runtimeServices)
-        template.data = runtimeServices.parse(input, templateName)
+    fun generate(input: String, templateName: String, vc: VelocityContext): String =
+            merge(parse(input, templateName), vc)
 
-        template.initDocument()
+    fun generate(inputPath: Path, vc: VelocityContext): String =
+            merge(getTemplate(inputPath), vc)
 
-        return StringWriter().apply {
-            template.merge(vc, this)
-        }.toString()
-    }
-
-    fun generate(inputPath: Path, vc: VelocityContext): String {
-        val templateText = Files.newInputStream(inputPath).use {
-            it.bufferedReader().readText()
-        }
-        val templateName = generate(templateText, inputPath.fileName.toString(), vc)
-
-        return generate(templateText, templateName, vc)
+    /**
+     * Merges template directly into the [output] without building the whole result in memory.
+     * The [output] is flushed, but not closed.
+     */
+    fun generate(inputPath: Path, output: Writer, vc: VelocityContext) {
+        getTemplate(inputPath).merge(vc, output)
+        output.flush()
     }
 
+    /**
+     * Streams merged template into the new [outputFile]. If merge fails, partially written file is deleted.
+     *
+     * @throws java.nio.file.FileAlreadyExistsException if [outputFile] already exists
+     */
     fun generate(inputPath: Path, outputFile: Path, vc: VelocityContext) {
-        val output = generate(inputPath, vc)
+        val template = getTemplate(inputPath)
+        val writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW)
 
-        Files.newBufferedWriter(outputFile).use { writer ->
-            writer.write(output)
+        try {
+            writer.use { template.merge(vc, it) }
+        } catch (e: Exception) {
+            Files.deleteIfExists(outputFile)
+            throw e
         }
     }
 
@@ -60,4 +66,57 @@ class VelocityHelper {
         }
         return generate(input, templateName, vc)
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses template into the shared cache in advance, so the next [generate] of the same file only merges it.
+     */
+    fun prepare(inputPath: Path) {
+        getTemplate(inputPath)
+    }
+
+    private fun merge(template: Template, vc: VelocityContext): String = StringWriter().apply {
+        template.merge(vc, this)
+    }.toString()
+
+    /**
+     * Returns parsed template from [templates] cache, or parses it, if it wasn't parsed yet or its file was modified.
+     */
+    private fun getTemplate(inputPath: Path): Template {
+        val key = inputPath.toAbsolutePath().normalize().toUri().toString()
+        val modified = Files.getLastModifiedTime(inputPath).toMillis()
+
+        templates[key]?.takeIf { it.modified == modified }?.let {
+            return it.template
+        }
+
+        val templateText = Files.newInputStream(inputPath).use {
+            it.bufferedReader(StandardCharsets.UTF_8).readText()
+        }
+
+        return parse(templateText, inputPath.fileName.toString()).also {
+            templates[key] = ParsedTemplate(modified, it)
+        }
+    }
+
+    private fun parse(input: String, templateName: String): Template {
+        val template = Template()
+        val runtimeServices = RuntimeSingleton.getRuntimeServices()
+        template.setRuntimeServices(runtimeServices)
+        template.data = runtimeServices.parse(input, templateName)
+
+        template.initDocument()
+
+        return template
+    }
+
+    private class ParsedTemplate(val modified: Long, val template: Template)
+
+    companion object {
+        /**
+         * Parsed templates, keyed by template file uri. As template processors resolve templates inside
+         * platform version directories, the key also distinguishes the same template of different versions.
+         * Parsed templates are immutable and may be merged concurrently, so they are shared by all helpers.
+         */
+        private val templates: MutableMap<String, ParsedTemplate> = ConcurrentHashMap()
+    }
+}
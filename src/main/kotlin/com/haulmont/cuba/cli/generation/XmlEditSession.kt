@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import com.haulmont.cuba.cli.PrintHelper
+import com.haulmont.cuba.cli.kodein
+import com.haulmont.cuba.cli.thisClassLogger
+import org.kodein.di.generic.instance
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import java.io.ByteArrayInputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.logging.Level
+
+/**
+ * Collects all xml modifications, made by [updateXml] and [appendXmlElement] during a command execution.
+ *
+ * Every file is parsed once, on the first access, and all modifications are applied to the same in-memory document.
+ * Appends to large files, that are not read during the command, are queued and streamed by [StreamingXmlEditor]
+ * instead of being parsed.
+ * Modified documents are saved once by [flush] after the command is successfully executed.
+ * If the command fails, modifications are discarded, and files, that were already saved, are restored by [rollback].
+ *
+ * Session is bound to the thread, which executes the command. Nested commands join the outer session.
+ */
+class XmlEditSession private constructor() {
+    private val logger by thisClassLogger()
+
+    private val printHelper: PrintHelper by kodein.instance()
+
+    private val files: MutableMap<Path, EditedFile> = linkedMapOf()
+
+    /**
+     * Returns the document of the file with all modifications made during the session.
+     */
+    fun getDocument(path: Path): Document = loadDocument(getEditedFile(path))
+
+    /**
+     * Checks, if the file has an element matched by [query], including elements added during the session.
+     * Unless the file is already parsed, it is scanned with [StreamingXmlEditor], so queued appends may still be streamed.
+     */
+    fun contains(path: Path, query: XmlElementQuery): Boolean {
+        val edited = files[path.toAbsolutePath().normalize()]
+
+        edited?.document?.let {
+            return query.findIn(it.documentElement)
+        }
+
+        if (containsElement(path, query))
+            return true
+
+        return edited != null && edited.appends.any { it.creates(query) }
+    }
+
+    fun update(path: Path, block: Element.() -> Unit) {
+        val edited = getEditedFile(path)
+        loadDocument(edited).documentElement.block()
+        edited.dirty = true
+    }
+
+    fun append(path: Path, append: XmlAppend) {
+        val edited = getEditedFile(path)
+        if (edited.document == null && Files.size(edited.path) >= StreamingXmlEditor.STREAMING_THRESHOLD) {
+            edited.appends += append
+        } else {
+            append.applyTo(loadDocument(edited).documentElement)
+        }
+        edited.dirty = true
+    }
+
+    /**
+     * Saves all modified documents. Documents, which content is the same as the file content, are not written.
+     */
+    fun flush() {
+        files.values.forEach { edited ->
+            if (edited.dirty) {
+                if (edited.appends.isNotEmpty() && stream(edited) || save(loadDocument(edited), edited.path)) {
+                    edited.written = true
+                    printHelper.fileWritten(edited.path)
+                } else {
+                    printHelper.fileUnchanged(edited.path)
+                }
+                edited.dirty = false
+            }
+        }
+
+        files.values.forEach { edited ->
+            edited.backup?.let { Files.deleteIfExists(it) }
+            edited.backup = null
+        }
+    }
+
+    /**
+     * Discards not saved modifications and restores original content of already saved files.
+     */
+    fun rollback() {
+        files.values.forEach { edited ->
+            try {
+                val backup = edited.backup
+                if (backup != null) {
+                    Files.move(backup, edited.path, StandardCopyOption.REPLACE_EXISTING)
+                } else if (edited.written) {
+                    Files.write(edited.path, edited.original!!)
+                }
+            } catch (e: Exception) {
+                logger.log(Level.SEVERE, "Unable to restore ${edited.path}", e)
+            }
+        }
+        files.clear()
+    }
+
+    /**
+     * Writes queued appends without parsing the file. The original file is kept as a backup until the session
+     * is flushed, so it may be restored by [rollback].
+     *
+     * @return false, if the file can't be streamed, and appends were applied to the parsed document instead
+     */
+    private fun stream(edited: EditedFile): Boolean {
+        val result = StreamingXmlEditor().apply(edited.path, edited.appends)
+        if (result == null) {
+            loadDocument(edited)
+            return false
+        }
+
+        val backup = Files.createTempFile(edited.path.parent, edited.path.fileName.toString(), ".bak")
+        Files.move(edited.path, backup, StandardCopyOption.REPLACE_EXISTING)
+        edited.backup = backup
+        Files.move(result, edited.path)
+        edited.appends.clear()
+        return true
+    }
+
+    private fun getEditedFile(path: Path): EditedFile {
+        val key = path.toAbsolutePath().normalize()
+
+        return files.getOrPut(key) { EditedFile(key) }
+    }
+
+    /**
+     * Parses the file, if it is not parsed yet, and applies queued appends to the document.
+     */
+    private fun loadDocument(edited: EditedFile): Document {
+        edited.document?.let { return it }
+
+        val original = Files.readAllBytes(edited.path)
+        val document = parse(ByteArrayInputStream(original))
+
+        edited.appends.forEach { it.applyTo(document.documentElement) }
+        edited.appends.clear()
+
+        edited.original = original
+        edited.document = document
+        return document
+    }
+
+    private class EditedFile(val path: Path) {
+        var original: ByteArray? = null
+
+        var document: Document? = null
+
+        val appends: MutableList<XmlAppend> = mutableListOf()
+
+        var backup: Path? = null
+
+        var dirty: Boolean = false
+
+        var written: Boolean = false
+    }
+
+    companion object {
+        private val currentSession: ThreadLocal<XmlEditSession?> = ThreadLocal()
+
+        /**
+         * Session of the currently executed command, if any.
+         */
+        val current: XmlEditSession?
+            get() = currentSession.get()
+
+        /**
+         * Executes [block] within a session, and flushes the session, if the block completes successfully.
+         * Otherwise, rolls the session back. If there is already a session on the current thread, the block joins it.
+         */
+        fun <T> execute(block: () -> T): T {
+            if (currentSession.get() != null)
+                return block()
+
+            val session = XmlEditSession()
+            currentSession.set(session)
+            try {
+                val result = block()
+                session.flush()
+                return result
+            } catch (e: Throwable) {
+                session.rollback()
+                throw e
+            } finally {
+                currentSession.remove()
+            }
+        }
+    }
+}
@@ -26,10 +26,16 @@ import org.w3c.dom.Document
 import org.w3c.dom.Element
 import org.w3c.dom.Node
 import org.xml.sax.InputSource
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
 import java.io.PrintWriter
 import java.io.StringReader
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.Queue
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
 import javax.xml.parsers.DocumentBuilder
 import javax.xml.parsers.DocumentBuilderFactory
 import javax.xml.parsers.ParserConfigurationException
@@ -39,39 +45,142 @@ private val printHelper: PrintHelper by kodein.instance()
 
 fun parse(path: Path): Document = Files.newInputStream(path).use { stream ->
     InputSource(stream).let {
-        createDocumentBuilder().parse(it)
+        withDocumentBuilder { parse(it) }
     }
 }
 
+fun parse(inputStream: InputStream): Document = InputSource(inputStream).let {
+    withDocumentBuilder { parse(it) }
+}
+
 fun parse(xml: String): Document = xml.let(::StringReader).let(::InputSource).let {
-    createDocumentBuilder().parse(it)
+    withDocumentBuilder { parse(it) }
 }
 
-private fun createDocumentBuilder(): DocumentBuilder {
-    val dbf = DocumentBuilderFactory.newInstance()
-    dbf.isNamespaceAware = false
-    dbf.isCoalescing = true
-    dbf.isValidating = false
+internal fun newDocument(): Document = withDocumentBuilder { newDocument() }
+
+private const val MAX_POOLED_BUILDERS = 8
+
+private const val MAX_CACHED_XPATHS = 64
+
+private val documentBuilderFactory: DocumentBuilderFactory = DocumentBuilderFactory.newInstance().apply {
+    isNamespaceAware = false
+    isCoalescing = true
+    isValidating = false
+}
+
+/**
+ * Configured builders, that are not used at the moment. Builders are not thread-safe, so every builder
+ * is used by one thread at a time and is reset before it is returned to the pool.
+ */
+private val documentBuilders: Queue<DocumentBuilder> = ConcurrentLinkedQueue()
 
+private val pooledBuildersCount = AtomicInteger()
+
+private inline fun <T> withDocumentBuilder(block: DocumentBuilder.() -> T): T {
+    val builder = documentBuilders.poll()?.also { pooledBuildersCount.decrementAndGet() } ?: createDocumentBuilder()
     try {
-        return dbf.newDocumentBuilder()
+        return builder.block()
+    } finally {
+        builder.reset()
+        if (pooledBuildersCount.incrementAndGet() <= MAX_POOLED_BUILDERS) {
+            documentBuilders.offer(builder)
+        } else {
+            pooledBuildersCount.decrementAndGet()
+        }
+    }
+}
+
+private fun createDocumentBuilder(): DocumentBuilder {
+    try {
+        return synchronized(documentBuilderFactory) {
+            documentBuilderFactory.newDocumentBuilder()
+        }
     } catch (e: ParserConfigurationException) {
         throw XmlException("unable to configure parser", e)
     }
 }
 
-fun save(document: Document, path: Path) = DOMSerializer(numIndentSpaces = 4).run {
-    Files.newOutputStream(path).use { outputStream ->
+/**
+ * Saves the document, unless the file already has the same content.
+ *
+ * @return true, if the file was written
+ */
+fun save(document: Document, path: Path): Boolean = DOMSerializer(numIndentSpaces = 4).run {
+    val content = ByteArrayOutputStream().also { outputStream ->
         serialize(document, outputStream)
-    }
+    }.toByteArray()
+
+    writeIfChanged(path, content)
+}
+
+/**
+ * Returns the document of the file, including modifications made by [updateXml] in the current [XmlEditSession].
+ */
+fun readXml(path: Path): Document = XmlEditSession.current?.getDocument(path) ?: parse(path)
+
+/**
+ * Checks, if the file has an element with [tagName], all [attributes] and, if [text] is not null, the same text content.
+ * Elements added in the current [XmlEditSession] are found too.
+ *
+ * Unlike [readXml], the file is scanned with StAX without building the document, so large descriptors,
+ * that are only checked and appended to, are not parsed into memory.
+ */
+fun hasXmlElement(path: Path, tagName: String, attributes: Map<String, String> = emptyMap(), text: String? = null): Boolean {
+    val query = XmlElementQuery(tagName, attributes, text)
+    return XmlEditSession.current?.contains(path, query) ?: containsElement(path, query)
 }
 
+internal fun containsElement(path: Path, query: XmlElementQuery): Boolean =
+        StreamingXmlEditor().contains(path, query) ?: query.findIn(parse(path).documentElement)
+
+/**
+ * Modifies xml file. Within [XmlEditSession] modifications are kept in memory till the end of the command execution.
+ * Otherwise, the file is saved immediately.
+ */
 fun updateXml(path: Path, block: Element.() -> Unit) {
+    val session = XmlEditSession.current
+    if (session != null) {
+        session.update(path, block)
+        return
+    }
+
     val document = parse(path)
     document.documentElement.block()
-    save(document, path)
 
-    printHelper.fileModified(path)
+    if (save(document, path)) {
+        printHelper.fileWritten(path)
+    } else {
+        printHelper.fileUnchanged(path)
+    }
+}
+
+/**
+ * Appends element with [tagName] to the first element, found by [parentPath] of child tag names starting from the root element.
+ * Missing elements of the path are created.
+ *
+ * Files larger than [StreamingXmlEditor.STREAMING_THRESHOLD] are modified without loading them into memory.
+ * Within [XmlEditSession] appends are applied when the session is flushed.
+ */
+fun appendXmlElement(path: Path, parentPath: List<String>, tagName: String, setup: Element.() -> Unit = {}) {
+    val append = XmlAppend(parentPath, tagName, setup)
+
+    val session = XmlEditSession.current
+    if (session != null) {
+        session.append(path, append)
+        return
+    }
+
+    if (Files.size(path) >= StreamingXmlEditor.STREAMING_THRESHOLD) {
+        val result = StreamingXmlEditor().apply(path, listOf(append))
+        if (result != null) {
+            Files.move(result, path, StandardCopyOption.REPLACE_EXISTING)
+            printHelper.fileWritten(path)
+            return
+        }
+    }
+
+    updateXml(path) { append.applyTo(this) }
 }
 
 fun Element.getChildElements() = (0..this.childNodes.length)
@@ -90,4 +199,17 @@ fun Element.appendChild(tagName: String, setup: (Element.() -> Unit)? = null): E
 operator fun Element.get(attributeName: String): String = this.getAttribute(attributeName)
 operator fun Element.set(attributeName: String, attributeValue: String) = this.setAttribute(attributeName, attributeValue)
 
-fun Element.xpath(expr: String): MutableList<Node> = XPathWrapper(expr).evaluate(this)
\ No newline at end of file
+/**
+ * Compiled expressions are cached per thread, as they are not thread-safe.
+ * Cache is bounded, because expressions often include searched values, such as screen ids.
+ */
+private val xpaths: ThreadLocal<MutableMap<String, XPathWrapper>> = ThreadLocal.withInitial {
+    object : LinkedHashMap<String, XPathWrapper>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, XPathWrapper>): Boolean =
+                size > MAX_CACHED_XPATHS
+    }
+}
+
+fun Element.xpath(expr: String): MutableList<Node> = xpaths.get()
+        .getOrPut(expr) { XPathWrapper(expr) }
+        .evaluate(this)
\ No newline at end of file
@@ -36,55 +36,65 @@ class MessagesWriter(writer: Writer, private val delimiter: Char) : PropertiesCo
     override fun writeProperty(key: String, value: Any, forceSingleLine: Boolean) {
         write(escapeKey(key))
         write(fetchSeparator(key, value))
-        write(escapeValue(value)!!)
+        write(escapeValue(value))
 
         writeln(null)
     }
 
-    /**
-     * Escape the separators in the [key].
-     *
-     * @param key the key
-     * @return the escaped key
-     */
-    private fun escapeKey(key: String): String {
-        val newkey = StringBuilder()
-
-        for (i in 0 until key.length) {
-            val c = key[i]
-
-            if (ArrayUtils.contains(SEPARATORS, c) || ArrayUtils.contains(WHITE_SPACE, c)) {
-                // escape the separator
-                newkey.append('\\')
-                newkey.append(c)
-            } else {
-                newkey.append(c)
-            }
-        }
+    private fun escapeValue(value: Any): String {
+        val joined = if (value is Collection<*>) {
+            Joiner.on(", ").skipNulls().join(value)
+        } else value.toString()
 
-        return newkey.toString()
+        return escapeValue(joined, delimiter)
     }
 
-    /**
-     * Escapes the given property value. Delimiter characters in the value
-     * will be escaped.
-     *
-     * @param value the property value
-     * @return the escaped property value
-     */
-    private fun escapeValue(value: Any): String? {
-        var value = value
-        if (value is Collection<*>) {
-            value = Joiner.on(", ").skipNulls().join(value)
-        }
-        var escapedValue = escapeJavaStyleString(value.toString(), false, false)
-        if (delimiter.toInt() != 0) {
-            escapedValue = StringUtils.replace(escapedValue, delimiter.toString(), ESCAPE + delimiter)
+    companion object {
+
+        /**
+         * Default list delimiter of commons-configuration.
+         */
+        const val LIST_DELIMITER = ','
+
+        /**
+         * Escape the separators in the [key].
+         *
+         * @param key the key
+         * @return the escaped key
+         */
+        fun escapeKey(key: String): String {
+            val newkey = StringBuilder()
+
+            for (i in 0 until key.length) {
+                val c = key[i]
+
+                if (ArrayUtils.contains(SEPARATORS, c) || ArrayUtils.contains(WHITE_SPACE, c)) {
+                    // escape the separator
+                    newkey.append('\\')
+                    newkey.append(c)
+                } else {
+                    newkey.append(c)
+                }
+            }
+
+            return newkey.toString()
         }
-        return escapedValue
-    }
 
-    companion object {
+        /**
+         * Escapes the given property value. Delimiter characters in the value
+         * will be escaped.
+         *
+         * @param value the property value
+         * @param delimiter list delimiter of the configuration
+         * @return the escaped property value
+         */
+        fun escapeValue(value: String, delimiter: Char = LIST_DELIMITER): String {
+            var escapedValue = escapeJavaStyleString(value, false, false)!!
+            if (delimiter.toInt() != 0) {
+                escapedValue = StringUtils.replace(escapedValue, delimiter.toString(), ESCAPE + delimiter)
+            }
+            return escapedValue
+        }
 
         /**
          * Constant for the escaping character.
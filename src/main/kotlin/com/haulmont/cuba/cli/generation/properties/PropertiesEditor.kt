@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation.properties
+
+import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
+import java.io.FilterOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.WritableByteChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * Edits properties file without rewriting the lines, that are not changed.
+ *
+ * The file is read in one streaming pass, that indexes positions of all entries. On [save] new entries are appended
+ * to the end of the file, and only lines of changed or removed entries are rewritten, so comments, ordering
+ * and formatting of other entries are kept as is. New and changed values are escaped the same way as [MessagesWriter] does.
+ */
+class PropertiesEditor private constructor(val path: Path, private val entries: Map<String, Entry>, private val endsWithNewLine: Boolean) {
+
+    /**
+     * New values of existing entries. Null value means, that entry is removed.
+     */
+    private val changed: MutableMap<String, String?> = linkedMapOf()
+
+    private val appended: MutableMap<String, String> = linkedMapOf()
+
+    val exists: Boolean
+        get() = Files.exists(path)
+
+    operator fun get(key: String): String? = when (key) {
+        in appended -> appended[key]
+        in changed -> changed[key]
+        else -> entries[key]?.value
+    }
+
+    operator fun set(key: String, value: String) {
+        val entry = entries[key]
+        when {
+            entry == null -> appended[key] = value
+            entry.value == value -> changed.remove(key)
+            else -> changed[key] = value
+        }
+    }
+
+    fun remove(key: String) {
+        appended.remove(key)
+        if (key in entries) {
+            changed[key] = null
+        }
+    }
+
+    val isModified: Boolean
+        get() = changed.isNotEmpty() || appended.isNotEmpty()
+
+    /**
+     * Writes modifications to the file. If entries were only added, they are appended to the file end,
+     * otherwise the file is rewritten, copying not changed parts as is.
+     *
+     * @return false, if there are no modifications
+     */
+    fun save(): Boolean {
+        if (!isModified)
+            return false
+
+        path.toAbsolutePath().parent?.let { Files.createDirectories(it) }
+
+        if (changed.isEmpty()) {
+            Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND).buffered().use { output ->
+                if (!endsWithNewLine) {
+                    output.write(LINE_SEPARATOR)
+                }
+                writeAppended(output)
+            }
+        } else {
+            val temp = Files.createTempFile(path.toAbsolutePath().parent, path.fileName.toString(), ".tmp")
+            try {
+                FileChannel.open(path).use { source ->
+                    Files.newOutputStream(temp).buffered().use { output ->
+                        rewrite(source, output)
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                Files.deleteIfExists(temp)
+            }
+        }
+
+        changed.clear()
+        appended.clear()
+        return true
+    }
+
+    private fun rewrite(source: FileChannel, output: OutputStream) {
+        val tracked = LastByteOutputStream(output)
+        val channel = Channels.newChannel(tracked)
+
+        var position = 0L
+        changed.entries
+                .map { (key, value) -> entries.getValue(key) to value }
+                .sortedBy { (entry, _) -> entry.start }
+                .forEach { (entry, value) ->
+                    transfer(source, position, entry.start, channel)
+                    if (value != null) {
+                        tracked.write((entry.prefix ?: MessagesWriter.escapeKey(entry.key) + SEPARATOR).toByteArray())
+                        tracked.write(MessagesWriter.escapeValue(value).toByteArray())
+                        tracked.write(entry.terminator.toByteArray())
+                    }
+                    position = entry.end
+                }
+        transfer(source, position, source.size(), channel)
+
+        if (appended.isNotEmpty() && tracked.lastByte != -1
+                && tracked.lastByte != '\n'.toInt() && tracked.lastByte != '\r'.toInt()) {
+            tracked.write(LINE_SEPARATOR)
+        }
+        writeAppended(tracked)
+    }
+
+    private fun transfer(source: FileChannel, from: Long, to: Long, target: WritableByteChannel) {
+        var position = from
+        while (position < to) {
+            position += source.transferTo(position, to - position, target)
+        }
+    }
+
+    private fun writeAppended(output: OutputStream) {
+        appended.forEach { (key, value) ->
+            output.write(MessagesWriter.escapeKey(key).toByteArray())
+            output.write(SEPARATOR.toByteArray())
+            output.write(MessagesWriter.escapeValue(value).toByteArray())
+            output.write(LINE_SEPARATOR)
+        }
+    }
+
+    private class LastByteOutputStream(output: OutputStream) : FilterOutputStream(output) {
+        var lastByte: Int = -1
+            private set
+
+        override fun write(b: Int) {
+            out.write(b)
+            lastByte = b and 0xFF
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            if (len > 0) {
+                lastByte = b[off + len - 1].toInt() and 0xFF
+            }
+        }
+    }
+
+    /**
+     * Position of a logical line, that defines the property, in the file.
+     *
+     * @param start offset of the first byte of the line
+     * @param end offset after the line terminator of the last continuation line
+     * @param prefix text of the first line before the value, including indent, key and separator,
+     * or null, if the value doesn't start on the first line
+     * @param terminator line terminator of the last line, empty at the end of the file
+     */
+    class Entry(
+            val key: String,
+            val value: String,
+            val start: Long,
+            val end: Long,
+            val prefix: String?,
+            val terminator: String
+    )
+
+    companion object {
+        /**
+         * Separator of new entries, that is the default separator of commons-configuration layout.
+         */
+        private const val SEPARATOR = " = "
+
+        private val LINE_SEPARATOR = "\n".toByteArray()
+
+        fun open(path: Path): PropertiesEditor {
+            if (!Files.exists(path))
+                return PropertiesEditor(path, emptyMap(), true)
+
+            return BufferedInputStream(Files.newInputStream(path)).use { input ->
+                Indexer(input).let {
+                    val entries = it.index()
+                    PropertiesEditor(path, entries, it.endsWithNewLine)
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the input into logical lines and parses them the same way as [java.util.Properties.load] does.
+     */
+    private class Indexer(private val input: InputStream) {
+        private var offset = 0L
+
+        private val line = ByteArrayOutputStream()
+
+        private var terminator = ""
+
+        private var eof = false
+
+        var endsWithNewLine = true
+            private set
+
+        fun index(): Map<String, Entry> {
+            val entries = linkedMapOf<String, Entry>()
+
+            while (!eof) {
+                val start = offset
+                val firstLine = readLine() ?: break
+
+                val indent = firstLine.takeWhile { isWhitespace(it) }
+                val logicalLine = StringBuilder(firstLine.substring(indent.length))
+
+                if (logicalLine.isEmpty() || logicalLine[0] == '#' || logicalLine[0] == '!')
+                    continue
+
+                val firstLineLength = logicalLine.length
+                while (endsWithContinuation(logicalLine)) {
+                    logicalLine.setLength(logicalLine.length - 1)
+                    val next = readLine() ?: break
+                    logicalLine.append(next.trimStart { isWhitespace(it) })
+                }
+
+                val entry = parseEntry(logicalLine, start, indent, firstLineLength)
+                entries.remove(entry.key)
+                entries[entry.key] = entry
+            }
+
+            return entries
+        }
+
+        private fun parseEntry(line: CharSequence, start: Long, indent: String, firstLineLength: Int): Entry {
+            val limit = line.length
+            var keyLength = 0
+            var valueStart = limit
+            var hasSeparator = false
+            var precedingBackslash = false
+
+            while (keyLength < limit) {
+                val c = line[keyLength]
+                if ((c == '=' || c == ':') && !precedingBackslash) {
+                    valueStart = keyLength + 1
+                    hasSeparator = true
+                    break
+                } else if (isWhitespace(c) && !precedingBackslash) {
+                    valueStart = keyLength + 1
+                    break
+                }
+                precedingBackslash = c == '\\' && !precedingBackslash
+                keyLength++
+            }
+
+            while (valueStart < limit) {
+                val c = line[valueStart]
+                if (!isWhitespace(c)) {
+                    if (!hasSeparator && (c == '=' || c == ':')) {
+                        hasSeparator = true
+                    } else {
+                        break
+                    }
+                }
+                valueStart++
+            }
+
+            return Entry(
+                    unescape(line, 0, keyLength),
+                    unescape(line, valueStart, limit),
+                    start,
+                    offset,
+                    if (valueStart <= firstLineLength) indent + line.substring(0, valueStart) else null,
+                    terminator)
+        }
+
+        private fun unescape(line: CharSequence, from: Int, to: Int): String {
+            val result = StringBuilder(to - from)
+            var i = from
+            while (i < to) {
+                var c = line[i++]
+                if (c == '\\' && i < to) {
+                    c = line[i++]
+                    when (c) {
+                        'u' -> {
+                            val hex = line.subSequence(i, minOf(i + 4, to)).toString()
+                            c = hex.toIntOrNull(16)?.toChar()
+                                    ?: throw IllegalArgumentException("Malformed \\uxxxx encoding: $hex")
+                            i += 4
+                        }
+                        't' -> c = '\t'
+                        'r' -> c = '\r'
+                        'n' -> c = '\n'
+                        'f' -> c = '\u000C'
+                    }
+                }
+                result.append(c)
+            }
+            return result.toString()
+        }
+
+        private fun endsWithContinuation(line: CharSequence): Boolean {
+            var backslashes = 0
+            var i = line.length - 1
+            while (i >= 0 && line[i] == '\\') {
+                backslashes++
+                i--
+            }
+            return backslashes % 2 == 1
+        }
+
+        private fun isWhitespace(c: Char) = c == ' ' || c == '\t' || c == '\u000C'
+
+        /**
+         * Reads physical line in UTF-8, remembering its terminator.
+         */
+        private fun readLine(): String? {
+            line.reset()
+            terminator = ""
+
+            while (true) {
+                val b = input.read()
+                if (b == -1) {
+                    eof = true
+                    break
+                }
+                offset++
+
+                if (b == '\n'.toInt()) {
+                    terminator = "\n"
+                    break
+                }
+                if (b == '\r'.toInt()) {
+                    terminator = "\r"
+                    input.mark(1)
+                    if (input.read() == '\n'.toInt()) {
+                        offset++
+                        terminator = "\r\n"
+                    } else {
+                        input.reset()
+                    }
+                    break
+                }
+                line.write(b)
+            }
+
+            if (eof && line.size() == 0 && terminator.isEmpty())
+                return null
+
+            endsWithNewLine = terminator.isNotEmpty()
+            return line.toString("UTF-8")
+        }
+    }
+}
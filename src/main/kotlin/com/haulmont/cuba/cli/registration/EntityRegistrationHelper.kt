@@ -18,9 +18,7 @@ package com.haulmont.cuba.cli.registration
 
 import com.haulmont.cuba.cli.cubaplugin.model.ModuleStructure
 import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
-import com.haulmont.cuba.cli.generation.appendChild
-import com.haulmont.cuba.cli.generation.findFirstChild
-import com.haulmont.cuba.cli.generation.updateXml
+import com.haulmont.cuba.cli.generation.appendXmlElement
 import java.nio.file.Path
 
 class EntityRegistrationHelper {
@@ -35,11 +33,8 @@ class EntityRegistrationHelper {
     }
 
     private fun addEntityToConfig(configPath: Path, elementName: String, className: String) {
-        updateXml(configPath) {
-            val configElement = findFirstChild(elementName) ?: appendChild(elementName)
-            configElement.appendChild("class") {
-                textContent = className
-            }
+        appendXmlElement(configPath, listOf(elementName), "class") {
+            textContent = className
         }
     }
 }
\ No newline at end of file
@@ -33,20 +33,15 @@ class ScreenRegistrationHelper {
     private val namesUtils: NamesUtils by kodein.instance()
 
     fun addToScreensXml(id: String, packageName: String, descriptorName: String) {
-        updateXml(screensXml) {
-            appendChild("screen") {
-                this["id"] = id
-                val template = namesUtils.packageToDirectory(packageName) + '/' + descriptorName + ".xml"
-                this["template"] = template
-            }
+        appendXmlElement(screensXml, emptyList(), "screen") {
+            this["id"] = id
+            val template = namesUtils.packageToDirectory(packageName) + '/' + descriptorName + ".xml"
+            this["template"] = template
         }
     }
 
-    fun isScreenIdExists(screenId: String): Boolean {
-        return parse(screensXml).documentElement
-                .xpath("//screen[@id=\"$screenId\"]")
-                .firstOrNull() != null
-    }
+    fun isScreenIdExists(screenId: String): Boolean =
+            hasXmlElement(screensXml, "screen", mapOf("id" to screenId))
 
     fun isDescriptorExists(packageName: String, descriptor: String): Boolean {
         val packagePath = ProjectStructure().getModule(ModuleStructure.WEB_MODULE).resolvePackagePath(packageName)
@@ -80,13 +75,9 @@ class ScreenRegistrationHelper {
         val projectStructure = ProjectStructure()
         val webModule = projectStructure.getModule(ModuleStructure.WEB_MODULE)
 
-        updateXml(webModule.rootPackageDirectory.resolve("web-menu.xml")) {
-            val menuItem = findFirstChild("menu") ?: appendChild("menu")
-
-            menuItem.appendChild("item") {
-                this["id"] = screenId
-                this["screen"] = screenId
-            }
+        appendXmlElement(webModule.rootPackageDirectory.resolve("web-menu.xml"), listOf("menu"), "item") {
+            this["id"] = screenId
+            this["screen"] = screenId
         }
 
         val mainMessages = webModule
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class MessagesTest {
+
+    @Test
+    fun testBundleIsLoadedOnce() {
+        val loaded = Messages.loadedBundlesCount
+
+        val messages = Messages(MessagesTest::class.java, "test-messages")
+        assertEquals(loaded, Messages.loadedBundlesCount)
+
+        assertEquals("Hello, CUBA!", messages["greeting", "CUBA"])
+        assertEquals(loaded + 1, Messages.loadedBundlesCount)
+
+        assertEquals("Bye", Messages(Messages::class.java, "test-messages.properties")["farewell"])
+        assertEquals("", messages["missing"])
+        assertEquals(loaded + 1, Messages.loadedBundlesCount)
+    }
+
+    @Test(expected = RuntimeException::class)
+    fun testMissingBundle() {
+        Messages(MessagesTest::class.java, "missing-messages")["greeting"]
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class PhaseTimerTest {
+
+    private var nanos: Long = 0
+
+    private var bytes: Long = 0
+
+    private val timer = PhaseTimer({ nanos }, { bytes })
+
+    @Test
+    fun testNestedPhases() {
+        timer.record("jvm", 100_000_000)
+
+        val plugins = timer.start("plugins")
+        nanos += 5_000_000
+        bytes += 2048
+
+        val terminal = timer.start("terminal")
+        nanos += 1_000_000
+        bytes += 1024
+        timer.end(terminal)
+
+        timer.end(plugins)
+
+        assertEquals(listOf("jvm", "plugins", "terminal"), timer.phases.map { it.name })
+        assertEquals(listOf(0, 0, 1), timer.phases.map { it.depth })
+        assertEquals(listOf(100_000_000L, 6_000_000L, 1_000_000L), timer.phases.map { it.nanos })
+        assertEquals(listOf(-1L, 3072L, 1024L), timer.phases.map { it.allocatedBytes })
+    }
+
+    @Test
+    fun testTable() {
+        val phase = timer.start("versions")
+        nanos += 2_500_000
+        bytes += 512
+        timer.end(phase)
+
+        val lines = timer.formatTable().lines()
+
+        assertEquals("Startup profile", lines[0])
+        assertTrue(lines[2].startsWith("versions"))
+        assertTrue(lines[2].trimEnd().endsWith("2.50             0.5"))
+        assertTrue(lines[3].startsWith("total"))
+        assertTrue(lines[3].endsWith("2.50"))
+    }
+
+    @Test
+    fun testUnsupportedAllocationCounter() {
+        val timer = PhaseTimer({ nanos }, { -1L })
+
+        timer.end(timer.start("cli"))
+
+        assertEquals(-1L, timer.phases.single().allocatedBytes)
+        assertTrue(timer.formatTable().lines()[2].trimEnd().endsWith("-"))
+    }
+}
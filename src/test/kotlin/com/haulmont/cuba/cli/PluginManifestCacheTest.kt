@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.Comparator
+
+class PluginManifestCacheTest {
+
+    private lateinit var directory: Path
+
+    private lateinit var pluginsDir: Path
+
+    private lateinit var cacheFile: Path
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("plugin-manifests")
+        pluginsDir = Files.createDirectories(directory.resolve("plugins"))
+        cacheFile = directory.resolve("cache").resolve("plugins.json")
+    }
+
+    @After
+    fun tearDown() {
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testManifestsArePersisted() {
+        Files.write(pluginsDir.resolve("sample-plugin.jar"), byteArrayOf(1, 2, 3))
+        Files.createDirectories(pluginsDir.resolve("nested"))
+        Files.write(pluginsDir.resolve("readme.txt"), byteArrayOf(1))
+
+        val jars = PluginManifestCache.jarsOf(pluginsDir)
+        assertEquals(listOf("sample-plugin.jar"), jars.map { it.file })
+        assertEquals(3L, jars.single().size)
+
+        val manifests = listOf(manifest(jars.single()))
+        PluginManifestCache(cacheFile).apply {
+            put(pluginsDir, manifests)
+            save()
+        }
+
+        assertEquals(manifests, PluginManifestCache(cacheFile).get(pluginsDir, PluginManifestCache.jarsOf(pluginsDir)))
+    }
+
+    @Test
+    fun testChangedJarInvalidatesManifests() {
+        val jar = Files.write(pluginsDir.resolve("sample-plugin.jar"), byteArrayOf(1, 2, 3))
+        val cache = PluginManifestCache(cacheFile)
+        cache.put(pluginsDir, listOf(manifest(PluginManifestCache.jarsOf(pluginsDir).single())))
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 60_000))
+        assertNull(cache.get(pluginsDir, PluginManifestCache.jarsOf(pluginsDir)))
+    }
+
+    @Test
+    fun testAddedJarInvalidatesManifests() {
+        Files.write(pluginsDir.resolve("sample-plugin.jar"), byteArrayOf(1, 2, 3))
+        val cache = PluginManifestCache(cacheFile)
+        cache.put(pluginsDir, listOf(manifest(PluginManifestCache.jarsOf(pluginsDir).single())))
+
+        Files.write(pluginsDir.resolve("library.jar"), byteArrayOf(1))
+        assertNull(cache.get(pluginsDir, PluginManifestCache.jarsOf(pluginsDir)))
+    }
+
+    @Test
+    fun testCorruptedCacheIsIgnored() {
+        Files.createDirectories(cacheFile.parent)
+        Files.write(cacheFile, "{ directories: [".toByteArray())
+
+        assertNull(PluginManifestCache(cacheFile).get(pluginsDir, listOf()))
+    }
+
+    @Test
+    fun testManifestsWithoutSubscribersFlagAreLoadedOnStart() {
+        val jar = Files.write(pluginsDir.resolve("sample-plugin.jar"), byteArrayOf(1, 2, 3))
+        val fingerprint = PluginManifestCache.jarsOf(pluginsDir).single()
+        val key = pluginsDir.toAbsolutePath().normalize().toString().replace("\\", "\\\\")
+
+        Files.createDirectories(cacheFile.parent)
+        Files.write(cacheFile, """{"directories": {"$key": [{
+            |"file": "${jar.fileName}", "modified": ${fingerprint.modified}, "size": ${fingerprint.size},
+            |"plugins": [{"className": "com.company.sample.SamplePlugin", "apiVersion": 5, "commands": ["sample"]}]
+            |}]}}""".trimMargin().toByteArray())
+
+        val plugin = PluginManifestCache(cacheFile).get(pluginsDir, listOf(fingerprint))!!.single().plugins.single()
+        assertEquals(listOf("sample"), plugin.commands)
+        assertTrue(plugin.eventSubscriber)
+    }
+
+    private fun manifest(jar: JarFingerprint) = PluginJarManifest(
+            jar.file, jar.modified, jar.size, "com.company.sample", "1.0",
+            listOf(PluginManifest("com.company.sample.SamplePlugin", 5, listOf("sample", "sample-screen"), false)))
+}
@@ -22,13 +22,21 @@ import com.haulmont.cuba.cli.commands.CommandExecutionException
 import com.haulmont.cuba.cli.cubaplugin.CubaPlugin
 import com.haulmont.cuba.cli.cubaplugin.di.cubaKodein
 import com.haulmont.cuba.cli.cubaplugin.model.EntitySearch
+import com.haulmont.cuba.cli.cubaplugin.model.ModuleStructure
 import com.haulmont.cuba.cli.cubaplugin.model.PlatformVersion
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
+import com.haulmont.cuba.cli.generation.StreamingXmlEditor
 import com.haulmont.cuba.cli.prompting.ValidationException
+import org.junit.Assert.assertNotEquals
 import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeNotNull
 import org.junit.Test
 import org.kodein.di.Kodein
 import org.kodein.di.generic.bind
 import org.kodein.di.generic.instance
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
 
 internal class CreateEntityCommandTest : CommandTestBase() {
 
@@ -108,6 +116,33 @@ internal class CreateEntityCommandTest : CommandTestBase() {
         assertTrue(entitySearch.getAllEntities().isEmpty())
     }
 
+    @Test
+    fun testLargePersistenceXmlIsStreamed() {
+        createProject()
+
+        val persistenceXml = ProjectStructure().getModule(ModuleStructure.GLOBAL_MODULE).persistenceXml
+        val padding = "<!--" + "x".repeat(StreamingXmlEditor.STREAMING_THRESHOLD.toInt()) + "-->"
+        Files.write(persistenceXml, String(Files.readAllBytes(persistenceXml))
+                .replace("<persistence-unit", "$padding\n    <persistence-unit")
+                .toByteArray())
+        val fileKey = fileKey(persistenceXml)
+        assumeNotNull(fileKey)
+
+        appendInputLine("TestEntity")
+        appendEmptyLine()
+        appendEmptyLine()
+
+        executeCommand(CreateEntityCommand(kodein = kodein))
+
+        assertNoErrorEvents()
+
+        val content = String(Files.readAllBytes(persistenceXml))
+        assertTrue(content.contains(padding))
+        assertTrue(content.contains("<class>com.haulmont.test.entity.TestEntity</class>"))
+//        document, saved through DOM, is rewritten in place, while streamed copy replaces the file
+        assertNotEquals(fileKey, fileKey(persistenceXml))
+    }
+
     @Test
     fun testCreateEntityWithoutProject() {
         appendInputLine("TestEntity")
@@ -150,4 +185,6 @@ internal class CreateEntityCommandTest : CommandTestBase() {
 
         assertErrorEvent<CommandExecutionException>()
     }
+
+    private fun fileKey(path: Path): Any? = Files.readAttributes(path, BasicFileAttributes::class.java).fileKey()
 }
\ No newline at end of file
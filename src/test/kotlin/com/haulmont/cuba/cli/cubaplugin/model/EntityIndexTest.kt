@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.haulmont.cuba.cli.writeText
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+
+class EntityIndexTest {
+
+    private lateinit var projectDir: Path
+
+    private lateinit var indexDir: Path
+
+    private val entityClasses = listOf("com.company.sample.Customer", "com.company.sample.Order")
+
+    private var scanCount = 0
+
+    @Before
+    fun setUp() {
+        projectDir = Files.createTempDirectory("entity-index-project")
+        indexDir = Files.createTempDirectory("entity-index")
+
+        for (fqn in entityClasses) {
+            val className = fqn.substringAfterLast(".")
+            projectDir.resolve("$className.java").writeText("""
+                package com.company.sample;
+
+                @Entity(name = "sample${'$'}$className")
+                public class $className extends StandardEntity {
+                }
+            """.trimIndent())
+        }
+    }
+
+    @After
+    fun tearDown() {
+        listOf(projectDir, indexDir).forEach { dir ->
+            Files.walk(dir)
+                    .sorted(Comparator.reverseOrder())
+                    .forEach { Files.delete(it) }
+        }
+    }
+
+    @Test
+    fun testSingleLookupKeepsOtherRecords() {
+        EntityIndex(projectDir, indexDir).getAllEntities(entityClasses, ::locateSource)
+        assertEquals(2, scanCount)
+
+        projectDir.resolve("Order.java").writeText("""
+            package com.company.sample;
+
+            @Entity(name = "sample${'$'}PurchaseOrder")
+            public class Order extends StandardEntity {
+            }
+        """.trimIndent())
+
+        val order = EntityIndex(projectDir, indexDir).getEntities(listOf("com.company.sample.Order"), ::locateSource)
+        assertEquals(listOf("sample\$PurchaseOrder"), order.map { it.name })
+        assertEquals(3, scanCount)
+
+        val entities = EntityIndex(projectDir, indexDir).getAllEntities(entityClasses, ::locateSource)
+        assertEquals(listOf("sample\$Customer", "sample\$PurchaseOrder"), entities.map { it.name })
+        assertEquals(3, scanCount)
+    }
+
+    @Test
+    fun testAllEntitiesRemoveOtherRecords() {
+        EntityIndex(projectDir, indexDir).getAllEntities(entityClasses, ::locateSource)
+        EntityIndex(projectDir, indexDir).getAllEntities(entityClasses.take(1), ::locateSource)
+
+        EntityIndex(projectDir, indexDir).getAllEntities(entityClasses, ::locateSource)
+        assertEquals(3, scanCount)
+    }
+
+    private fun locateSource(fqn: String): Path {
+        scanCount++
+        return projectDir.resolve(fqn.substringAfterLast(".") + ".java")
+    }
+}
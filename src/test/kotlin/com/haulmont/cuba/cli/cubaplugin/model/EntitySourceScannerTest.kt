@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.FilterReader
+import java.io.StringReader
+
+class EntitySourceScannerTest {
+
+    @Test
+    fun testJavaEntity() {
+        val header = EntitySourceScanner.scan("""
+            package com.company.sample.entity;
+
+            import javax.persistence.Entity;
+            import javax.persistence.Table;
+            import static java.util.Objects.requireNonNull;
+
+            @Table(name = "SAMPLE_CUSTOMER")
+            @Entity(name = "sample${'$'}Customer")
+            public class Customer extends StandardEntity {
+            }
+        """.trimIndent())
+
+        assertEquals("com.company.sample.entity", header.packageName)
+        assertEquals(listOf("javax.persistence.Entity", "javax.persistence.Table", "java.util.Objects.requireNonNull"), header.imports)
+        assertEquals("sample\$Customer", header.entityName)
+        assertFalse(header.embeddable)
+    }
+
+    @Test
+    fun testKotlinEmbeddable() {
+        val header = EntitySourceScanner.scan("""
+            package com.company.sample.entity
+
+            import javax.persistence.*
+
+            @javax.persistence.Embeddable
+            @MetaClass(name = "sample_Address")
+            data class Address(val city: String)
+        """.trimIndent())
+
+        assertEquals("com.company.sample.entity", header.packageName)
+        assertEquals(listOf("javax.persistence.*"), header.imports)
+        assertNull(header.entityName)
+        assertTrue(header.embeddable)
+    }
+
+    @Test
+    fun testCommentsAndStringsAreSkipped() {
+        val header = EntitySourceScanner.scan("""
+            package com.company.sample.entity;
+
+            // @Embeddable
+            /* @Entity(name = "sample${'$'}Wrong") */
+            @NamePattern("@Embeddable %s|name")
+            @Entity("sample${'$'}Order")
+            public class Order extends StandardEntity {
+            }
+        """.trimIndent())
+
+        assertEquals("sample\$Order", header.entityName)
+        assertFalse(header.embeddable)
+    }
+
+    @Test
+    fun testBodyIsNotRead() {
+        val header = """
+            package com.company.sample.entity;
+
+            @Entity(name = "sample${'$'}Customer")
+            public class Customer extends StandardEntity {
+        """.trimIndent()
+
+        var charsRead = 0
+        val reader = object : FilterReader(StringReader(header + "\n    protected String name;\n".repeat(100_000) + "}")) {
+            override fun read(cbuf: CharArray, off: Int, len: Int): Int =
+                    super.read(cbuf, off, len).also { if (it > 0) charsRead += it }
+        }
+
+        assertEquals("sample\$Customer", EntitySourceScanner.scan(reader).entityName)
+        assertTrue(charsRead < 10_000)
+    }
+
+    @Test
+    fun testEntityNameFallsBackToClassName() {
+        assertEquals("Customer", Entity("com.company.sample.entity.Customer", "@Entity\npublic class Customer {}").name)
+    }
+}
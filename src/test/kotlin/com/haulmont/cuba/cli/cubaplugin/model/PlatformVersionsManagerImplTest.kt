@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.net.Inet6Address
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+
+/**
+ * Loads versions from a local stand-in of studio-config.json, as if it was passed with `--versionsConfigUrl`.
+ */
+class PlatformVersionsManagerImplTest {
+
+    private lateinit var cacheDir: Path
+
+    private lateinit var server: HttpServer
+
+    private lateinit var url: String
+
+    private val requests = mutableListOf<String?>()
+
+    private var config = """{"platform_versions": ["6.10.1", "6.10.5", "7.0.3", "7.1.0", "7.2.4", "5.0.0"]}"""
+
+    @Before
+    fun setUp() {
+        cacheDir = Files.createTempDirectory("platform-versions-cache")
+
+        server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        server.createContext("/studio-config.json") { exchange ->
+            val etag = "\"" + config.hashCode() + "\""
+            synchronized(requests) {
+                requests += exchange.requestHeaders.getFirst("If-None-Match")
+            }
+
+            if (exchange.requestHeaders.getFirst("If-None-Match") == etag) {
+                exchange.sendResponseHeaders(304, -1)
+            } else {
+                val body = config.toByteArray()
+                exchange.responseHeaders.add("ETag", etag)
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.write(body)
+            }
+            exchange.close()
+        }
+        server.start()
+
+//        connect to the same literal address, the server is bound to, as localhost may resolve to another one first
+        val address = server.address.address
+        val host = if (address is Inet6Address) "[${address.hostAddress}]" else address.hostAddress
+        url = "http://$host:${server.address.port}/studio-config.json"
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+        Files.walk(cacheDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testVersionsAreCached() {
+        val first = load()
+        first.refreshThread!!.join()
+        assertEquals(listOf("7.2.4", "7.1.0", "7.0.3", "6.10.5"), first.versions)
+
+        config = """{"platform_versions": ["7.2.5"]}"""
+
+        val second = load()
+        assertNull(second.refreshThread)
+        assertEquals(listOf("7.2.4", "7.1.0", "7.0.3", "6.10.5"), second.versions)
+        assertEquals(1, requests.size)
+    }
+
+    @Test
+    fun testExpiredCacheIsRevalidated() {
+        load(ttlMillis = 0).refreshThread!!.join()
+
+        val notModified = load(ttlMillis = 0)
+        assertEquals(listOf("7.2.4", "7.1.0", "7.0.3", "6.10.5"), notModified.versions)
+        notModified.refreshThread!!.join()
+        assertEquals(listOf("7.2.4", "7.1.0", "7.0.3", "6.10.5"), notModified.versions)
+
+        config = """{"platform_versions": ["7.2.5"]}"""
+
+        val modified = load(ttlMillis = 0)
+        assertEquals(listOf("7.2.4", "7.1.0", "7.0.3", "6.10.5"), modified.versions)
+        modified.refreshThread!!.join()
+        assertEquals(listOf("7.2.5"), modified.versions)
+
+        assertEquals(listOf(null, requests[1], requests[1]), requests)
+    }
+
+    private fun load(ttlMillis: Long = 60_000) = PlatformVersionsManagerImpl(cacheDir, ttlMillis) { url }.apply {
+        load()
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+
+class ProjectFileIndexTest {
+
+    private lateinit var projectDir: Path
+
+    private lateinit var src: Path
+
+    @Before
+    fun setUp() {
+        projectDir = Files.createTempDirectory("project-file-index")
+        src = projectDir.resolve("modules/global/src")
+        Files.createDirectories(src.resolve("com/company/sample"))
+        Files.createFile(src.resolve("com/company/sample/metadata.xml"))
+    }
+
+    @After
+    fun tearDown() {
+        Files.walk(projectDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testIndex() {
+        val index = ProjectFileIndex(projectDir)
+
+        assertEquals(src.resolve("com/company/sample/metadata.xml"), index.findFile("global", "metadata.xml"))
+        assertEquals(setOf("com", "com.company", "com.company.sample"), index.getPackages("global"))
+    }
+
+    @Test
+    fun testCreatedFilesAreAdded() {
+        val index = ProjectFileIndex(projectDir)
+        assertNull(index.findFile("global", "views.xml"))
+
+        val views = Files.createDirectories(src.resolve("com/company/sample/entity")).resolve("views.xml")
+        Files.createFile(views)
+        index.fileCreated(views)
+
+        assertEquals(views, index.findFile("global", "views.xml"))
+        assertTrue("com.company.sample.entity" in index.getPackages("global"))
+
+        index.fileCreated(views)
+        assertEquals(listOf(views), index.findFiles("global", "views.xml"))
+    }
+
+    @Test
+    fun testOnlyTopLevelBuildDirectoryIsSkipped() {
+        Files.createDirectories(src.resolve("build/classes"))
+        Files.createDirectories(src.resolve("com/company/build"))
+        Files.createFile(src.resolve("com/company/build/views.xml"))
+
+        val index = ProjectFileIndex(projectDir)
+
+        assertEquals(src.resolve("com/company/build/views.xml"), index.findFile("global", "views.xml"))
+        assertEquals(setOf("com", "com.company", "com.company.sample", "com.company.build"), index.getPackages("global"))
+    }
+
+    @Test
+    fun testFilesOutsideOfModulesAreIgnored() {
+        val index = ProjectFileIndex(projectDir)
+        index.getPackages("global")
+
+        val settings = Files.createFile(projectDir.resolve("settings.gradle"))
+        index.fileCreated(settings)
+        index.fileCreated(projectDir.resolveSibling("other").resolve("modules/global/src/a/views.xml"))
+
+        assertEquals(setOf("com", "com.company", "com.company.sample"), index.getPackages("global"))
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import com.haulmont.cuba.cli.readText
+import com.haulmont.cuba.cli.writeText
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.Comparator
+
+class ProjectModelCacheTest {
+
+    private lateinit var testDir: Path
+
+    private lateinit var cacheDir: Path
+
+    private lateinit var projectDir: Path
+
+    private lateinit var file: Path
+
+    private var parseCount = 0
+
+    @Before
+    fun setUp() {
+        testDir = Files.createTempDirectory("project-model-cache")
+        cacheDir = testDir.resolve("cache")
+        projectDir = Files.createDirectories(testDir.resolve("project"))
+        file = projectDir.resolve("settings.gradle")
+        file.writeText("rootProject.name = 'first'")
+        parseCount = 0
+    }
+
+    @After
+    fun tearDown() {
+        Files.walk(testDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testValueIsReusedWhileFileIsUnchanged() {
+        val cache = ProjectModelCache(cacheDir).forProject(projectDir)
+
+        assertEquals("rootProject.name = 'first'", cache.get("name", { file }, ::countingParse))
+        assertEquals("rootProject.name = 'first'", cache.get("name", { file }, ::countingParse))
+        assertEquals(1, parseCount)
+    }
+
+    @Test
+    fun testValueIsReparsedAfterChange() {
+        val cache = ProjectModelCache(cacheDir).forProject(projectDir)
+
+        cache.get("name", { file }, ::countingParse)
+        file.writeText("rootProject.name = 'second project'")
+
+        assertEquals("rootProject.name = 'second project'", cache.get("name", { file }, ::countingParse))
+        assertEquals(2, parseCount)
+    }
+
+    @Test
+    fun testTouchedFileWithSameContentIsNotReparsed() {
+        val cache = ProjectModelCache(cacheDir).forProject(projectDir)
+
+        cache.get("name", { file }, ::countingParse)
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10_000))
+
+        cache.get("name", { file }, ::countingParse)
+        assertEquals(1, parseCount)
+    }
+
+    @Test
+    fun testCacheIsSharedBetweenLaunches() {
+        ProjectModelCache(cacheDir).forProject(projectDir).apply {
+            get("name", { file }, ::countingParse)
+            flush()
+        }
+
+        val value = ProjectModelCache(cacheDir).forProject(projectDir).get("name", { file }, ::countingParse)
+
+        assertEquals("rootProject.name = 'first'", value)
+        assertEquals(1, parseCount)
+    }
+
+    @Test
+    fun testWatchedValueIsNotCheckedUntilChangeIsReported() {
+        val cache = ProjectModelCache(cacheDir).forProject(projectDir)
+        cache.watch { it == file.toAbsolutePath().normalize() }
+
+        cache.get("name", { file }, ::countingParse)
+        file.writeText("rootProject.name = 'second project'")
+
+        assertEquals("rootProject.name = 'first'", cache.get("name", { file }, ::countingParse))
+
+        cache.filesChanged(setOf(file.toAbsolutePath().normalize()))
+
+        assertEquals("rootProject.name = 'second project'", cache.get("name", { file }, ::countingParse))
+        assertEquals(2, parseCount)
+    }
+
+    @Test
+    fun testNotWatchedValueIsChecked() {
+        val cache = ProjectModelCache(cacheDir).forProject(projectDir)
+        cache.watch { false }
+
+        cache.get("name", { file }, ::countingParse)
+        file.writeText("rootProject.name = 'second project'")
+
+        assertEquals("rootProject.name = 'second project'", cache.get("name", { file }, ::countingParse))
+    }
+
+    private fun countingParse(path: Path): String {
+        parseCount++
+        return path.readText()
+    }
+}
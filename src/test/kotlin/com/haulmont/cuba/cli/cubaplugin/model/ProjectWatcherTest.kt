@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ProjectWatcherTest {
+
+    private lateinit var projectDir: Path
+
+    private lateinit var watcher: ProjectWatcher
+
+    private val started = CountDownLatch(1)
+
+    private val changes: MutableSet<Path> = ConcurrentHashMap.newKeySet()
+
+    private var isWatched: ((Path) -> Boolean)? = null
+
+    @Before
+    fun setUp() {
+        projectDir = Files.createTempDirectory("project-watcher").toRealPath()
+        Files.write(projectDir.resolve("build.gradle"), "".toByteArray())
+        Files.createDirectories(projectDir.resolve("modules/global/src/com/company/sample"))
+        Files.createDirectories(projectDir.resolve("modules/global/src/com/company/build"))
+        Files.createDirectories(projectDir.resolve("modules/global/src/build"))
+        Files.createDirectories(projectDir.resolve("modules/global/build/classes"))
+
+        watcher = ProjectWatcher(projectDir, object : ProjectWatcher.Listener {
+            override fun watchStarted(isWatched: (Path) -> Boolean) {
+                this@ProjectWatcherTest.isWatched = isWatched
+                started.countDown()
+            }
+
+            override fun filesChanged(files: Set<Path>) {
+                changes.addAll(files)
+            }
+
+            override fun changesLost() {
+            }
+
+            override fun watchStopped() {
+            }
+        })
+        watcher.start()
+
+        assumeTrue("Native watch service is not available", started.await(10, TimeUnit.SECONDS))
+    }
+
+    @After
+    fun tearDown() {
+        watcher.close()
+        Files.walk(projectDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testWatchedDirectories() {
+        val isWatched = isWatched!!
+
+        assertTrue(isWatched(projectDir.resolve("build.gradle")))
+        assertTrue(isWatched(projectDir.resolve("modules/global/src/com/company/sample/Customer.java")))
+        assertTrue(isWatched(projectDir.resolve("modules/global/src/com/company/build/Customer.java")))
+        assertFalse(isWatched(projectDir.resolve("modules/global/src/build/Customer.class")))
+        assertFalse(isWatched(projectDir.resolve("modules/global/build/classes/Customer.class")))
+    }
+
+    @Test
+    fun testChangedFileIsReported() {
+        val file = projectDir.resolve("modules/global/src/com/company/sample/metadata.xml")
+        Files.write(file, "<metadata/>".toByteArray())
+
+        awaitChange(file)
+    }
+
+    @Test
+    fun testFilesOfCreatedDirectoryAreReported() {
+        val directory = Files.createDirectories(projectDir.resolve("modules/global/src/com/company/sample/entity"))
+        val file = directory.resolve("Customer.java")
+        Files.write(file, "package com.company.sample.entity;".toByteArray())
+
+        awaitChange(directory)
+        awaitChange(file)
+        assertTrue(isWatched!!(file))
+    }
+
+    private fun awaitChange(path: Path) {
+        val deadline = System.currentTimeMillis() + 10_000
+        while (path !in changes) {
+            assertTrue("Change of $path is not reported", System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.model
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+
+class VersionDirectoryCatalogTest {
+
+    private lateinit var templateDir: Path
+
+    @Before
+    fun setUp() {
+        templateDir = Files.createTempDirectory("version-catalog")
+        listOf("6.10", "7.0", "7.2").forEach {
+            Files.createDirectory(templateDir.resolve(it))
+        }
+    }
+
+    @After
+    fun tearDown() {
+        Files.walk(templateDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testMostSuitableDirectory() {
+        assertEquals("6.10", find("6.2"))
+        assertEquals("6.10", find("6.10.5"))
+        assertEquals("7.0", find("7.0"))
+        assertEquals("7.0", find("7.1.3"))
+        assertEquals("7.2", find("7.2.0"))
+        assertEquals("7.2", find("latest"))
+    }
+
+    @Test
+    fun testUnpackableVersions() {
+        assertEquals("7.0", find("7.1.0.0.1"))
+        assertEquals("7.2", find("70000.1"))
+    }
+
+    @Test
+    fun testTemplateWithoutVersions() {
+        Files.createDirectory(templateDir.resolve("modules"))
+
+        assertEquals(templateDir, PlatformVersion("7.0").findMostSuitableVersionDirectory(templateDir))
+    }
+
+    private fun find(version: String): String =
+            PlatformVersion(version).findMostSuitableVersionDirectory(templateDir).fileName.toString()
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.cubaplugin.prefixchange
+
+import com.haulmont.cuba.cli.CliPlugin
+import com.haulmont.cuba.cli.command.CommandTestBase
+import com.haulmont.cuba.cli.cubaplugin.CubaPlugin
+import com.haulmont.cuba.cli.cubaplugin.di.cubaKodein
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectModel
+import com.haulmont.cuba.cli.cubaplugin.model.ProjectStructure
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import org.kodein.di.Kodein
+
+internal class PrefixChangeCommandTest : CommandTestBase() {
+
+    override val plugins: List<CliPlugin> = listOf(CubaPlugin())
+    override val kodeinsToExtend: List<Kodein> = listOf(cubaKodein)
+
+    @Test
+    fun testChangedPrefixIsSeenInWatchedProject() {
+        createProject()
+
+        val projectStructure = ProjectStructure()
+        val cache = projectStructure.cache
+
+//        watch events aren't delivered here, as if the watcher reports the change after the next command starts
+        cache.watch { true }
+        try {
+            assertNotEquals("changed", ProjectModel(projectStructure).modulePrefix)
+
+            appendInputLine("changed")
+
+            executeCommand(PrefixChangeCommand())
+
+            assertNoErrorEvents()
+
+            assertEquals("changed", ProjectModel(ProjectStructure()).modulePrefix)
+        } finally {
+            cache.watch(null)
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.cli.daemon
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class DaemonProtocolTest {
+
+    @Test
+    fun testOutputFrames() {
+        val bytes = ByteArrayOutputStream()
+        val output = DataOutputStream(bytes)
+
+        FrameOutputStream(output).apply {
+            write("Entity ".toByteArray())
+            write('X'.toInt())
+            write(ByteArray(0))
+        }
+        DaemonProtocol.writeExit(output, 42)
+
+        val input = DataInputStream(ByteArrayInputStream(bytes.toByteArray()))
+        assertEquals(DaemonProtocol.OUTPUT, input.readByte().toInt())
+        assertEquals("Entity ", String(ByteArray(input.readInt()).also { input.readFully(it) }))
+        assertEquals(DaemonProtocol.OUTPUT, input.readByte().toInt())
+        assertEquals("X", String(ByteArray(input.readInt()).also { input.readFully(it) }))
+        assertEquals(DaemonProtocol.EXIT, input.readByte().toInt())
+        assertEquals(4, input.readInt())
+        assertEquals(42, input.readInt())
+        assertEquals(-1, input.read())
+    }
+
+    @Test
+    fun testInputFramesEndWithInputEnd() {
+        val bytes = ByteArrayOutputStream()
+        val output = DataOutputStream(bytes)
+
+        DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT, "first\n".toByteArray())
+        DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT, "second\n".toByteArray())
+        DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT_END)
+        DaemonProtocol.writeFrame(output, DaemonProtocol.INPUT, "ignored".toByteArray())
+
+        val input = FrameInputStream(DataInputStream(ByteArrayInputStream(bytes.toByteArray())))
+
+        assertEquals("first\nsecond\n", input.reader().readText())
+        assertEquals(-1, input.read())
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.stream.Collectors
+
+/**
+ * Golden files are template xmls, serialized by the previous serializer implementation.
+ * They are placed by the same relative paths as templates in main resources.
+ */
+class DOMSerializerTest {
+
+    @Test
+    fun testTemplatesMatchGoldenFiles() {
+        val goldenRoot = Paths.get(javaClass.getResource("golden").toURI())
+        val goldenFiles = Files.walk(goldenRoot).use { files ->
+            files.filter { Files.isRegularFile(it) }.collect(Collectors.toList())
+        }
+
+        assertTrue(goldenFiles.isNotEmpty())
+
+        goldenFiles.forEach { golden ->
+            val templateName = "/" + goldenRoot.relativize(golden).joinToString("/")
+            val template = javaClass.getResourceAsStream(templateName).use { parse(it) }
+
+            assertEquals(templateName, String(Files.readAllBytes(golden), Charsets.UTF_8), serialize(template))
+        }
+    }
+
+    @Test
+    fun testFormatting() {
+        val document = parse("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?xml-stylesheet type="text/xsl" href="style.xsl"?>
+            <window xmlns="http://schemas.haulmont.com/cuba/screen/window.xsd" caption="msg://caption" id="window"
+                    xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                <!-- layout -->
+                <layout xmlns="http://schemas.haulmont.com/cuba/screen/layout.xsd" expand="table">
+                    <label value="a &amp; b &quot;quoted&quot;"/>
+                    <text>  escaped &lt;content&gt;  </text>
+                    <empty></empty>
+                    <blank>   </blank>
+                    <mixed>text<child/></mixed>
+                </layout>
+            </window>
+        """.trimIndent())
+
+        assertEquals("""
+            |<?xml version="1.0" encoding="UTF-8" standalone="no"?>
+            |<?xml-stylesheet type="text/xsl" href="style.xsl"?>
+            |<window xmlns="http://schemas.haulmont.com/cuba/screen/window.xsd"
+            |        xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+            |        id="window"
+            |        caption="msg://caption">
+            |    <!-- layout -->
+            |    <layout expand="table">
+            |        <label value="a &amp; b &quot;quoted&quot;"/>
+            |        <text>escaped &lt;content&gt;</text>
+            |        <empty/>
+            |        <blank>
+            |        </blank>
+            |        <mixed>text            <child/>
+            |        </mixed>
+            |    </layout>
+            |</window>
+            |""".trimMargin(), serialize(document))
+    }
+
+    private fun serialize(document: org.w3c.dom.Document): String = ByteArrayOutputStream().also {
+        DOMSerializer(numIndentSpaces = 4).serialize(document, it)
+    }.toString("UTF-8")
+}
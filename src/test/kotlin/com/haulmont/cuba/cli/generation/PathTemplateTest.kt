@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import com.haulmont.cuba.cli.commands.CommandExecutionException
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+
+class PathTemplateTest {
+
+    class Module(val name: String, val isWeb: Boolean)
+
+    class Project(val rootPackage: String, val module: Module)
+
+    private val bindings: Map<String, Any> = mapOf(
+            "project" to Project("com.company.sample", Module("core", false)),
+            "entity" to mapOf("className" to "Customer")
+    )
+
+    @Test
+    fun testLiteralPath() {
+        assertEquals("/modules/core/build.gradle", PathTemplate.compile("/modules/core/build.gradle").apply(bindings))
+    }
+
+    @Test
+    fun testPropertiesAndMapKeys() {
+        assertEquals("/modules/core/Customer.java",
+                PathTemplate.compile("/modules/\${project.module.name}/\${entity.className}.java").apply(bindings))
+        assertEquals("false", PathTemplate.compile("\${project.module.isWeb}").apply(bindings))
+    }
+
+    @Test
+    fun testPackageExpression() {
+        val separator = File.separator
+        assertEquals("/src/com${separator}company${separator}sample/entity",
+                PathTemplate.compile("/src/\$[project.rootPackage]/entity").apply(bindings))
+    }
+
+    @Test(expected = CommandExecutionException::class)
+    fun testUnknownVariable() {
+        PathTemplate.compile("/\${project.unknown}").apply(bindings)
+    }
+}
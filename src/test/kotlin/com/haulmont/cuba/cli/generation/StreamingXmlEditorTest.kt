@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+
+class StreamingXmlEditorTest {
+
+    private lateinit var directory: Path
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("streaming-xml-editor-test")
+    }
+
+    @After
+    fun tearDown() {
+        Files.list(directory).use { files -> files.forEach { Files.delete(it) } }
+        Files.delete(directory)
+    }
+
+    @Test
+    fun testPersistenceXml() {
+        assertSameAsDom("""
+            <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+            <persistence xmlns="http://java.sun.com/xml/ns/persistence" version="2.0">
+                <!-- entities -->
+                <persistence-unit name="sample" transaction-type="RESOURCE_LOCAL">
+                    <class>com.company.sample.entity.Customer</class>
+                    <class>com.company.sample.entity.Order</class>
+                </persistence-unit>
+            </persistence>
+        """.trimIndent(), XmlAppend(listOf("persistence-unit"), "class") { textContent = "com.company.sample.entity.Product" })
+    }
+
+    @Test
+    fun testScreensXml() {
+        assertSameAsDom("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?xml-stylesheet type="text/xsl" href="screens.xsl"?>
+            <screen-config xmlns="http://schemas.haulmont.com/cuba/screens.xsd"
+                           xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                <screen id="sample${'$'}Customer.browse" template="com/company/sample/web/customer/customer-browse.xml"/>
+                <screen id="sample${'$'}Customer.edit" template="com/company/sample/web/customer/customer-edit.xml"></screen>
+                <include file="com/company/sample/web/other-screens.xml">  </include>
+            </screen-config>
+        """.trimIndent(),
+                XmlAppend(emptyList(), "screen") { this["id"] = "sample\$Order.browse"; this["template"] = "order-browse.xml" },
+                XmlAppend(emptyList(), "screen") { this["id"] = "sample\$Order.edit"; this["template"] = "order-edit.xml" })
+    }
+
+    @Test
+    fun testMissingParentIsCreated() {
+        assertSameAsDom("""
+            <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+            <menu-config xmlns="http://schemas.haulmont.com/cuba/menu.xsd"/>
+        """.trimIndent(), XmlAppend(listOf("menu"), "item") { this["id"] = "sample\$Customer.browse" })
+    }
+
+    @Test
+    fun testTextAndNestedElements() {
+        assertSameAsDom("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <metadata xmlns:ext="http://example.com/ext">
+                <metadata-model root-package="com.company.sample" ext:attr="a &amp; b">
+                    text &lt;escaped&gt;
+                    <class>com.company.sample.entity.Address</class>
+                    <![CDATA[cdata <content>]]>
+                </metadata-model>
+                <metadata-model root-package="com.company.other"/>
+            </metadata>
+        """.trimIndent(),
+                XmlAppend(listOf("metadata-model"), "class") { textContent = "com.company.sample.entity.Point" },
+                XmlAppend(listOf("annotations", "entity"), "property") { this["name"] = "x" })
+    }
+
+    @Test
+    fun testDtdIsNotSupported() {
+        val file = write("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <!DOCTYPE config [ <!ENTITY company "Haulmont"> ]>
+            <config><name>&company;</name></config>
+        """.trimIndent())
+
+        assertNull(StreamingXmlEditor().apply(file, listOf(XmlAppend(emptyList(), "property") {})))
+    }
+
+    @Test
+    fun testContains() {
+        val file = write("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <screen-config xmlns="http://schemas.haulmont.com/cuba/screens.xsd">
+                <screen id="sample${'$'}Customer.browse" template="customer-browse.xml"/>
+                <persistence-unit>
+                    <class>
+                        com.company.sample.entity.Customer
+                    </class>
+                </persistence-unit>
+            </screen-config>
+        """.trimIndent())
+
+        val editor = StreamingXmlEditor()
+
+        assertEquals(true, editor.contains(file, XmlElementQuery("screen", mapOf("id" to "sample\$Customer.browse"))))
+        assertEquals(false, editor.contains(file, XmlElementQuery("screen", mapOf("id" to "sample\$Customer.edit"))))
+        assertEquals(true, editor.contains(file, XmlElementQuery("class", text = "com.company.sample.entity.Customer")))
+        assertEquals(false, editor.contains(file, XmlElementQuery("class", text = "com.company.sample.entity.Order")))
+    }
+
+    @Test
+    fun testContainsIsSameAsDom() {
+        val file = write("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <metadata xmlns:ext="http://example.com/ext">
+                <metadata-model ext:attr="a &amp; b">
+                    <class>com.company.sample.entity.<![CDATA[Address]]></class>
+                </metadata-model>
+            </metadata>
+        """.trimIndent())
+
+        val root = parse(file).documentElement
+        listOf(
+                XmlElementQuery("metadata-model", mapOf("ext:attr" to "a & b")),
+                XmlElementQuery("metadata-model", mapOf("attr" to "a & b")),
+                XmlElementQuery("class", text = "com.company.sample.entity.Address"),
+                XmlElementQuery("metadata", text = "com.company.sample.entity.Address")
+        ).forEach {
+            assertEquals(it.findIn(root), StreamingXmlEditor().contains(file, it))
+        }
+    }
+
+    @Test
+    fun testAppendCreates() {
+        val append = XmlAppend(listOf("persistence-unit"), "class") { textContent = "com.company.sample.entity.Product" }
+
+        assertEquals(true, append.creates(XmlElementQuery("class", text = "com.company.sample.entity.Product")))
+        assertEquals(false, append.creates(XmlElementQuery("persistence-unit")))
+    }
+
+    private fun assertSameAsDom(xml: String, vararg appends: XmlAppend) {
+        val file = write(xml)
+
+        val document = parse(file)
+        appends.forEach { it.applyTo(document.documentElement) }
+        val expected = ByteArrayOutputStream().also {
+            DOMSerializer(numIndentSpaces = 4).serialize(document, it)
+        }.toString("UTF-8")
+
+        val result = StreamingXmlEditor().apply(file, appends.toList())!!
+
+        assertEquals(expected, String(Files.readAllBytes(result), Charsets.UTF_8))
+    }
+
+    private fun write(xml: String): Path = Files.createTempFile(directory, "test", ".xml").also {
+        Files.write(it, xml.toByteArray())
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation
+
+import com.google.common.eventbus.EventBus
+import com.google.common.eventbus.Subscribe
+import com.haulmont.cuba.cli.event.FileWrittenEvent
+import com.haulmont.cuba.cli.kodein
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.kodein.di.generic.instance
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+
+class XmlEditSessionTest {
+
+    private val bus: EventBus by kodein.instance()
+
+    private lateinit var directory: Path
+
+    private val written: MutableList<Path> = mutableListOf()
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("xml-edit-session-test")
+        written.clear()
+        bus.register(this)
+    }
+
+    @After
+    fun tearDown() {
+        bus.unregister(this)
+        Files.walk(directory)
+                .sorted(Comparator.reverseOrder())
+                .forEach { Files.delete(it) }
+    }
+
+    @Subscribe
+    fun onFileWritten(event: FileWrittenEvent) {
+        written.add(event.path)
+    }
+
+    @Test
+    fun testEditsOfFileAreWrittenOnce() {
+        val screensXml = createXml("screens.xml", SCREENS_XML)
+        val original = Files.readAllBytes(screensXml)
+
+        XmlEditSession.execute {
+            updateXml(screensXml) { setAttribute("first", "1") }
+            appendXmlElement(screensXml, emptyList(), "screen") { setAttribute("id", "sample\$Order.browse") }
+            updateXml(screensXml) { setAttribute("second", "2") }
+
+            assertArrayEquals(original, Files.readAllBytes(screensXml))
+        }
+
+        assertEquals(listOf(screensXml), written)
+
+        val root = parse(screensXml).documentElement
+        assertEquals("1", root.getAttribute("first"))
+        assertEquals("2", root.getAttribute("second"))
+        assertTrue(XmlElementQuery("screen", mapOf("id" to "sample\$Order.browse")).findIn(root))
+    }
+
+    @Test
+    fun testFailedCommandDoesNotWriteFiles() {
+        val screensXml = createXml("screens.xml", SCREENS_XML)
+        val persistenceXml = createXml("persistence.xml", largePersistenceXml())
+        val screensContent = Files.readAllBytes(screensXml)
+        val persistenceContent = Files.readAllBytes(persistenceXml)
+
+        try {
+            XmlEditSession.execute {
+                updateXml(screensXml) { setAttribute("first", "1") }
+                appendXmlElement(persistenceXml, listOf("persistence-unit"), "class") { textContent = "com.company.sample.entity.Order" }
+                throw IllegalStateException("Command failed")
+            }
+            fail("Exception is expected")
+        } catch (e: IllegalStateException) {
+        }
+
+        assertArrayEquals(screensContent, Files.readAllBytes(screensXml))
+        assertArrayEquals(persistenceContent, Files.readAllBytes(persistenceXml))
+        assertTrue(written.isEmpty())
+    }
+
+    @Test
+    fun testFailedFlushRestoresWrittenFiles() {
+        val screensXml = createXml("screens.xml", SCREENS_XML)
+        val persistenceXml = createXml("persistence.xml", largePersistenceXml())
+        val menuXml = createXml("menu/menu.xml", MENU_XML)
+        val screensContent = Files.readAllBytes(screensXml)
+        val persistenceContent = Files.readAllBytes(persistenceXml)
+
+        try {
+            XmlEditSession.execute {
+                updateXml(screensXml) { setAttribute("first", "1") }
+                appendXmlElement(persistenceXml, listOf("persistence-unit"), "class") { textContent = "com.company.sample.entity.Order" }
+                updateXml(menuXml) { setAttribute("first", "1") }
+
+//                menu.xml can't be saved, when the session is flushed, after screens.xml and persistence.xml are written
+                Files.delete(menuXml)
+                Files.delete(menuXml.parent)
+            }
+            fail("Exception is expected")
+        } catch (e: IOException) {
+        }
+
+        assertArrayEquals(screensContent, Files.readAllBytes(screensXml))
+        assertArrayEquals(persistenceContent, Files.readAllBytes(persistenceXml))
+        Files.list(directory).use { files ->
+            assertEquals(setOf(screensXml, persistenceXml), files.toArray().toSet())
+        }
+    }
+
+    @Test
+    fun testNestedSessionIsFlushedByOuter() {
+        val screensXml = createXml("screens.xml", SCREENS_XML)
+        val original = Files.readAllBytes(screensXml)
+
+        XmlEditSession.execute {
+            val outer = XmlEditSession.current
+            updateXml(screensXml) { setAttribute("first", "1") }
+
+            XmlEditSession.execute {
+                assertSame(outer, XmlEditSession.current)
+                updateXml(screensXml) { setAttribute("second", "2") }
+            }
+
+            assertArrayEquals(original, Files.readAllBytes(screensXml))
+            assertEquals("2", readXml(screensXml).documentElement.getAttribute("second"))
+        }
+
+        assertNull(XmlEditSession.current)
+        assertEquals(listOf(screensXml), written)
+
+        val root = parse(screensXml).documentElement
+        assertEquals("1", root.getAttribute("first"))
+        assertEquals("2", root.getAttribute("second"))
+    }
+
+    private fun createXml(name: String, content: String): Path {
+        val path = directory.resolve(name).toAbsolutePath().normalize()
+        Files.createDirectories(path.parent)
+        return Files.write(path, content.toByteArray())
+    }
+
+    private fun largePersistenceXml(): String {
+        val padding = "<!--" + "x".repeat(StreamingXmlEditor.STREAMING_THRESHOLD.toInt()) + "-->"
+        return """
+            <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+            <persistence xmlns="http://java.sun.com/xml/ns/persistence" version="2.0">
+                $padding
+                <persistence-unit name="sample" transaction-type="RESOURCE_LOCAL">
+                    <class>com.company.sample.entity.Customer</class>
+                </persistence-unit>
+            </persistence>
+        """.trimIndent()
+    }
+
+    companion object {
+        private val SCREENS_XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <screen-config xmlns="http://schemas.haulmont.com/cuba/screens.xsd">
+                <screen id="sample${'$'}Customer.browse" template="customer-browse.xml"/>
+            </screen-config>
+        """.trimIndent()
+
+        private val MENU_XML = """
+            <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+            <menu-config xmlns="http://schemas.haulmont.com/cuba/menu.xsd"/>
+        """.trimIndent()
+    }
+}
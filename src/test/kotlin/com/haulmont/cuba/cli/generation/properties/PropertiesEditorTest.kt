@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2008-2018 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cli.generation.properties
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+
+class PropertiesEditorTest {
+
+    private lateinit var directory: Path
+
+    private lateinit var file: Path
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("properties-editor-test")
+        file = directory.resolve("messages.properties")
+    }
+
+    @After
+    fun tearDown() {
+        Files.list(directory).use { files -> files.forEach { Files.delete(it) } }
+        Files.delete(directory)
+    }
+
+    @Test
+    fun testValuesAreParsed() {
+        write("""
+            |# comment = value
+            |  ! another comment
+            |simple=Simple
+            |spaced   :   Spaced value
+            |escaped\ key = Tab\tand A
+            |multiline = first, \
+            |    second
+            |last Last
+            """.trimMargin())
+
+        val editor = PropertiesEditor.open(file)
+
+        assertNull(editor["# comment"])
+        assertEquals("Simple", editor["simple"])
+        assertEquals("Spaced value", editor["spaced"])
+        assertEquals("Tab\tand A", editor["escaped key"])
+        assertEquals("first, second", editor["multiline"])
+        assertEquals("Last", editor["last"])
+    }
+
+    @Test
+    fun testNewEntriesAreAppended() {
+        val original = "# Messages\nCustomer=Customer\r\nOrder = Order"
+        write(original)
+
+        val editor = PropertiesEditor.open(file)
+        editor["Product"] = "Product, item"
+        editor["Customer"] = "Customer"
+
+        assertTrue(editor.save())
+        assertEquals("$original\nProduct = Product\\, item\n", read())
+    }
+
+    @Test
+    fun testOnlyChangedLinesAreRewritten() {
+        write("""
+            |# Messages
+            |Customer:Customer
+            |Order = Order \
+            |   line
+            |
+            |Product=Product
+            |""".trimMargin())
+
+        val editor = PropertiesEditor.open(file)
+        editor["Customer"] = "Client"
+        editor.remove("Order")
+        editor["Item"] = "Item"
+
+        assertTrue(editor.save())
+        assertEquals("""
+            |# Messages
+            |Customer:Client
+            |
+            |Product=Product
+            |Item = Item
+            |""".trimMargin(), read())
+    }
+
+    @Test
+    fun testUnchangedFileIsNotWritten() {
+        write("Customer=Customer\n")
+
+        val editor = PropertiesEditor.open(file)
+        editor["Customer"] = "Customer"
+
+        assertFalse(editor.save())
+    }
+
+    @Test
+    fun testFileIsCreated() {
+        val editor = PropertiesEditor.open(file)
+        assertFalse(editor.exists)
+
+        editor["menu-config.sample\$Customer.browse"] = "Customers"
+        editor.save()
+
+        assertEquals("menu-config.sample\$Customer.browse = Customers\n", read())
+    }
+
+    private fun write(text: String) {
+        Files.write(file, text.toByteArray())
+    }
+
+    private fun read() = String(Files.readAllBytes(file))
+}